@@ -1,5 +1,4 @@
 import API_BASE_URL from "./config";
-import { pathImages } from "../utils/config";
 
 // ===================== PROBLEMES =====================
 
@@ -32,7 +31,7 @@ export const formatProblemeData = (item) => ({
   createdAt: item.signalement?.createdAt || new Date().toISOString(),
   rawData: item,
   images: (item.signalement?.images || []).map((img) => ({
-    url: img.nomFichier ? `${pathImages()}${img.nomFichier}` : null,
+    url: img.url ? `${API_BASE_URL}${img.url}` : null,
     nomFichier: img.nomFichier || "Image",
   })).filter((img) => img.url),
 });
@@ -1,5 +1,4 @@
 import API_BASE_URL from "./config";
-import { pathImages } from "../utils/config";
 
 // ===================== SIGNALEMENTS =====================
 
@@ -25,7 +24,7 @@ export const formatSignalementData = (item) => ({
   valeur: item.status?.valeur || 0,
   rawData: item,
   images: (item.images || []).map((img) => ({
-    url: img.nomFichier ? `${pathImages()}${img.nomFichier}` : null,
+    url: img.url ? `${API_BASE_URL}${img.url}` : null,
     nomFichier: img.nomFichier || "Image",
   })).filter((img) => img.url),
 });
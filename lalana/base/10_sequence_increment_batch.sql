@@ -0,0 +1,6 @@
+-- Ids alloues par blocs de 50 (allocationSize des entites) pour le batching JDBC de l'import.
+-- Les sequences SERIAL existantes sont reutilisees ; seul leur pas change.
+ALTER SEQUENCE points_id_seq INCREMENT BY 50;
+ALTER SEQUENCE signalement_id_seq INCREMENT BY 50;
+ALTER SEQUENCE signalement_history_id_seq INCREMENT BY 50;
+ALTER SEQUENCE signalement_images_id_seq INCREMENT BY 50;
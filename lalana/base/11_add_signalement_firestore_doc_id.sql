@@ -0,0 +1,3 @@
+-- Id du document Firestore signalementAdd d'origine : import idempotent (pas de doublon apres reprise)
+ALTER TABLE signalement ADD COLUMN IF NOT EXISTS firestore_doc_id VARCHAR(128);
+CREATE UNIQUE INDEX IF NOT EXISTS ux_signalement_firestore_doc_id ON signalement (firestore_doc_id);
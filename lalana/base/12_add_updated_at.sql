@@ -0,0 +1,9 @@
+-- Date de derniere modification : reponses delta de /sync (mode=delta, jeton since)
+ALTER TABLE signalement ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP;
+ALTER TABLE probleme ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP;
+
+UPDATE signalement SET updated_at = COALESCE(created_at, NOW()) WHERE updated_at IS NULL;
+UPDATE probleme SET updated_at = NOW() WHERE updated_at IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_signalement_updated_at ON signalement (updated_at);
+CREATE INDEX IF NOT EXISTS idx_probleme_updated_at ON probleme (updated_at);
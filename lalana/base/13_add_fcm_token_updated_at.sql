@@ -0,0 +1,2 @@
+-- updatedAt du document userTokens lu lors de la derniere synchronisation des FCM tokens
+ALTER TABLE users ADD COLUMN IF NOT EXISTS fcm_token_updated_at TIMESTAMP WITH TIME ZONE;
@@ -0,0 +1,22 @@
+-- Outbox locale des notifications : ecrite dans la transaction metier, videe par NotificationRelayService
+CREATE TABLE IF NOT EXISTS notification_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    type VARCHAR(20) NOT NULL,
+    entity_id INTEGER,
+    action VARCHAR(30) NOT NULL,
+    title VARCHAR(255),
+    message TEXT,
+    user_id VARCHAR(50),
+    firebase_uid VARCHAR(255),
+    description TEXT,
+    old_status VARCHAR(50),
+    new_status VARCHAR(50),
+    status VARCHAR(20) NOT NULL DEFAULT 'READY',
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error TEXT,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    locked_at TIMESTAMP WITH TIME ZONE,
+    sent_at TIMESTAMP WITH TIME ZONE
+);
+
+CREATE INDEX IF NOT EXISTS idx_notification_outbox_status ON notification_outbox (status, id);
@@ -0,0 +1,10 @@
+-- Reprise des notifications en echec : date de la prochaine tentative (backoff exponentiel)
+ALTER TABLE notification_outbox ADD COLUMN IF NOT EXISTS next_attempt_at TIMESTAMP WITH TIME ZONE;
+
+-- Contrainte generee par Hibernate sur l'enum (sans DEAD) lorsque la table vient de ddl-auto
+ALTER TABLE notification_outbox DROP CONSTRAINT IF EXISTS notification_outbox_status_check;
+
+-- Les anciennes lignes ERROR (tentatives epuisees) deviennent DEAD
+UPDATE notification_outbox SET status = 'DEAD' WHERE status = 'ERROR';
+
+CREATE INDEX IF NOT EXISTS idx_notification_outbox_retry ON notification_outbox (status, next_attempt_at);
@@ -0,0 +1,2 @@
+-- Statistiques manager : premiere date de chaque statut par probleme (MIN ... GROUP BY probleme_id)
+CREATE INDEX IF NOT EXISTS idx_probleme_history_probleme_status ON probleme_history (probleme_id, status_id, changed_at);
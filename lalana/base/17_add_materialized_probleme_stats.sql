@@ -0,0 +1,32 @@
+-- Statistiques manager materialisees, maintenues a chaque ecriture de probleme_history
+-- (reconstruction : POST /api/problemes/manager-stats/rebuild, automatique au demarrage si vide)
+CREATE TABLE IF NOT EXISTS probleme_transition (
+    probleme_id INTEGER PRIMARY KEY,
+    entreprise_id INTEGER,
+    status_valeur INTEGER,
+    nouveau_at TIMESTAMP,
+    en_cours_at TIMESTAMP,
+    termine_at TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS probleme_stats (
+    stats_key VARCHAR(50) PRIMARY KEY,
+    entreprise_id INTEGER,
+    nouveau_count BIGINT NOT NULL DEFAULT 0,
+    en_cours_count BIGINT NOT NULL DEFAULT 0,
+    termine_count BIGINT NOT NULL DEFAULT 0,
+    total_count BIGINT NOT NULL DEFAULT 0,
+    nouveau_to_en_cours_sum BIGINT NOT NULL DEFAULT 0,
+    nouveau_to_en_cours_count BIGINT NOT NULL DEFAULT 0,
+    nouveau_to_en_cours_min INTEGER,
+    nouveau_to_en_cours_max INTEGER,
+    en_cours_to_termine_sum BIGINT NOT NULL DEFAULT 0,
+    en_cours_to_termine_count BIGINT NOT NULL DEFAULT 0,
+    en_cours_to_termine_min INTEGER,
+    en_cours_to_termine_max INTEGER,
+    total_sum BIGINT NOT NULL DEFAULT 0,
+    total_duration_count BIGINT NOT NULL DEFAULT 0,
+    total_min INTEGER,
+    total_max INTEGER,
+    updated_at TIMESTAMP
+);
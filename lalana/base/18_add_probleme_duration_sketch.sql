@@ -0,0 +1,15 @@
+-- Distributions horaires des durees de transition (esquisses a buckets logarithmiques, 128 compteurs)
+CREATE TABLE IF NOT EXISTS probleme_duration_sketch (
+    sketch_key VARCHAR(100) PRIMARY KEY,
+    scope_key VARCHAR(50) NOT NULL,
+    entreprise_id INTEGER,
+    period VARCHAR(7) NOT NULL,
+    metric VARCHAR(30) NOT NULL,
+    total_count BIGINT NOT NULL DEFAULT 0,
+    buckets BIGINT[] NOT NULL,
+    updated_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_probleme_duration_sketch_scope ON probleme_duration_sketch (scope_key, period);
+
+-- Remplie par la reconstruction (automatique au demarrage si vide, ou POST /api/problemes/manager-stats/rebuild)
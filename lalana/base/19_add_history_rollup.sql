@@ -0,0 +1,14 @@
+-- Rollups journaliers / hebdomadaires des historiques (GET /api/analytics/trends)
+-- Remplie au demarrage si vide, ou via POST /api/analytics/trends/rebuild
+CREATE TABLE IF NOT EXISTS history_rollup (
+    rollup_key VARCHAR(120) PRIMARY KEY,
+    source VARCHAR(20) NOT NULL,
+    granularity VARCHAR(10) NOT NULL,
+    bucket_start DATE NOT NULL,
+    status_valeur INTEGER NOT NULL,
+    entreprise_id INTEGER NOT NULL,
+    niveau INTEGER NOT NULL,
+    event_count BIGINT NOT NULL DEFAULT 0
+);
+
+CREATE INDEX IF NOT EXISTS idx_history_rollup_range ON history_rollup (source, granularity, bucket_start);
@@ -0,0 +1,13 @@
+-- Index des listes paginees par curseur (GET /api/signalements, /api/problemes, ?cursor=&limit=)
+-- Chaque filtre suivi de id : le parcours "WHERE filtre AND id < curseur ORDER BY id DESC LIMIT n" reste borne
+CREATE INDEX IF NOT EXISTS idx_signalement_status_id ON signalement (status_id, id);
+CREATE INDEX IF NOT EXISTS idx_signalement_user_id ON signalement (user_id, id);
+CREATE INDEX IF NOT EXISTS idx_signalement_created_at ON signalement (created_at, id);
+CREATE INDEX IF NOT EXISTS idx_signalement_point ON signalement (point_id);
+CREATE INDEX IF NOT EXISTS idx_points_xy ON points (x, y);
+
+CREATE INDEX IF NOT EXISTS idx_probleme_status_id ON probleme (status_id, id);
+CREATE INDEX IF NOT EXISTS idx_probleme_entreprise_id ON probleme (entreprise_id, id);
+CREATE INDEX IF NOT EXISTS idx_probleme_signalement ON probleme (signalement_id);
+
+CREATE INDEX IF NOT EXISTS idx_signalement_images_signalement ON signalement_images (signalement_id);
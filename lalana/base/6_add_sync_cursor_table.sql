@@ -0,0 +1,10 @@
+-- Curseur persistant de l'import incremental Firestore (signalementAdd)
+CREATE TABLE IF NOT EXISTS sync_cursor (
+    name VARCHAR(50) PRIMARY KEY,
+    last_update_time TIMESTAMP WITH TIME ZONE,
+    last_doc_id VARCHAR(255),
+    updated_at TIMESTAMP
+);
+
+-- Pour reimporter depuis le debut :
+-- DELETE FROM sync_cursor WHERE name = 'signalementAdd';
@@ -0,0 +1,7 @@
+-- Etat du telechargement asynchrone des images de signalement
+ALTER TABLE signalement_images ADD COLUMN IF NOT EXISTS download_status VARCHAR(20);
+ALTER TABLE signalement_images ADD COLUMN IF NOT EXISTS download_attempts INTEGER;
+ALTER TABLE signalement_images ADD COLUMN IF NOT EXISTS download_error VARCHAR(500);
+
+-- Les images existantes ont deja ete telechargees de facon synchrone
+UPDATE signalement_images SET download_status = 'DONE' WHERE download_status IS NULL;
@@ -0,0 +1,4 @@
+-- Stockage adresse par contenu des images (SHA-256 du fichier sous uploads.base-dir/store)
+ALTER TABLE signalement_images ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+CREATE INDEX IF NOT EXISTS idx_signalement_images_content_hash ON signalement_images (content_hash);
+CREATE INDEX IF NOT EXISTS idx_signalement_images_chemin_online ON signalement_images (chemin_online);
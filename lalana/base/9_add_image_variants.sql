@@ -0,0 +1,3 @@
+-- Variantes des images de signalement (miniature et taille moyenne, JPEG progressif)
+ALTER TABLE signalement_images ADD COLUMN IF NOT EXISTS chemin_thumbnail VARCHAR(255);
+ALTER TABLE signalement_images ADD COLUMN IF NOT EXISTS chemin_medium VARCHAR(255);
@@ -0,0 +1,65 @@
+package com.projet.lalana.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * Pool used by the sync pipeline stages (Firestore document building and writes).
+     */
+    @Bean(name = "syncWorkerExecutor", destroyMethod = "shutdown")
+    public ExecutorService syncWorkerExecutor(@Value("${sync.workers:4}") int workers) {
+        return Executors.newFixedThreadPool(Math.max(1, workers), new CustomizableThreadFactory("sync-worker-"));
+    }
+
+    /**
+     * Pool used by the image download pipeline. Scheduled so that retries can be delayed
+     * without holding a worker thread.
+     */
+    @Bean(name = "imageDownloadExecutor", destroyMethod = "shutdown")
+    public ScheduledExecutorService imageDownloadExecutor(@Value("${images.download.workers:8}") int workers) {
+        return Executors.newScheduledThreadPool(Math.max(1, workers), new CustomizableThreadFactory("image-download-"));
+    }
+
+    /**
+     * Pool running the independent phases of the full sync cycle. Kept apart from
+     * syncWorkerExecutor because a phase blocks while its own work runs on that pool.
+     */
+    @Bean(name = "syncPhaseExecutor", destroyMethod = "shutdown")
+    public ExecutorService syncPhaseExecutor(@Value("${sync.phase-workers:5}") int workers) {
+        return Executors.newFixedThreadPool(Math.max(1, workers), new CustomizableThreadFactory("sync-phase-"));
+    }
+
+    /**
+     * Single thread running sync cycles triggered through the API, off the servlet threads.
+     */
+    @Bean(name = "syncTriggerExecutor", destroyMethod = "shutdown")
+    public ExecutorService syncTriggerExecutor() {
+        return Executors.newSingleThreadExecutor(new CustomizableThreadFactory("sync-trigger-"));
+    }
+
+    /**
+     * Single thread flushing the FCM send queue; sendEach already fans each batch out internally.
+     */
+    @Bean(name = "fcmDispatchExecutor", destroyMethod = "shutdown")
+    public ScheduledExecutorService fcmDispatchExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("fcm-dispatch-"));
+    }
+
+    /**
+     * Single thread running the notification outbox relay, apart from the shared @Scheduled thread
+     * so that a long sync cycle does not delay notifications.
+     */
+    @Bean(name = "notificationRelayExecutor", destroyMethod = "shutdown")
+    public ScheduledExecutorService notificationRelayExecutor() {
+        return Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("outbox-relay-"));
+    }
+}
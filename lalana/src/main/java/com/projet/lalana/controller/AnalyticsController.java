@@ -0,0 +1,64 @@
+package com.projet.lalana.controller;
+
+import com.projet.lalana.dto.TrendSeriesDto;
+import com.projet.lalana.response.ApiResponse;
+import com.projet.lalana.service.HistoryRollupService;
+import com.projet.lalana.service.ServiceException;
+import com.projet.lalana.service.TrendAnalyticsService;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/api/analytics")
+@RequiredArgsConstructor
+public class AnalyticsController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalyticsController.class);
+
+    private final TrendAnalyticsService trendAnalyticsService;
+    private final HistoryRollupService historyRollupService;
+
+    /**
+     * Tendances par jour (DAY) ou semaine (WEEK) des historiques SIGNALEMENT ou PROBLEME,
+     * filtrables par entreprise et niveau (problemes uniquement). Dates au format yyyy-MM-dd.
+     */
+    @GetMapping("/trends")
+    public ApiResponse getTrends(@RequestParam(defaultValue = "PROBLEME") String source,
+            @RequestParam(defaultValue = "DAY") String granularity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Integer entrepriseId,
+            @RequestParam(required = false) Integer niveau) {
+        try {
+            TrendSeriesDto series = trendAnalyticsService.trends(source, granularity, from, to, entrepriseId,
+                    niveau);
+            return new ApiResponse(true, "OK", series);
+        } catch (ServiceException se) {
+            logger.error("ServiceException getTrends", se);
+            return new ApiResponse(false, se.getMessage(), null);
+        } catch (Exception e) {
+            logger.error("Unexpected error getTrends", e);
+            return new ApiResponse(false, "Erreur serveur lors du calcul des tendances", null);
+        }
+    }
+
+    @PostMapping("/trends/rebuild")
+    public ApiResponse rebuildTrends() {
+        try {
+            int rows = historyRollupService.rebuild();
+            return new ApiResponse(true, "Rollups reconstruits (" + rows + " lignes)", rows);
+        } catch (Exception e) {
+            logger.error("Unexpected error rebuildTrends", e);
+            return new ApiResponse(false, "Erreur serveur lors de la reconstruction des tendances", null);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.projet.lalana.controller;
+
+import com.projet.lalana.service.ImageStoreService;
+import com.projet.lalana.service.ServiceException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service des images stockees localement (originaux du store et variantes).
+ *
+ * Les reponses portent un ETag (hash du contenu) et, pour les fichiers du store, un Cache-Control
+ * immuable d'un an. Lorsque le connecteur Tomcat supporte sendfile, le fichier (ou l'unique plage
+ * demandee) est transmis par le noyau sans passer par le heap ; sinon Spring sert la ressource et
+ * gere lui-meme les requetes Range (206 / ResourceRegion).
+ */
+@RestController
+@RequestMapping("/api/images")
+@RequiredArgsConstructor
+public class ImageController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageController.class);
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final ImageStoreService imageStoreService;
+
+    @GetMapping("/{id:\\d+}")
+    public ResponseEntity<?> getImage(@PathVariable Integer id,
+            @RequestParam(defaultValue = "original") String variant,
+            HttpServletRequest request, HttpServletResponse response) {
+        try {
+            ImageStoreService.ServedFile file = imageStoreService.resolve(id, variant);
+            CacheControl cacheControl = file.isImmutable()
+                    ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable()
+                    : CacheControl.maxAge(1, TimeUnit.HOURS).cachePublic();
+            MediaType mediaType = MediaTypeFactory.getMediaType(file.getFileName())
+                    .orElse(MediaType.APPLICATION_OCTET_STREAM);
+
+            if (new ServletWebRequest(request, response).checkNotModified(file.getEtag())) {
+                response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+                return null;
+            }
+
+            long length = Files.size(file.getPath());
+            List<HttpRange> ranges = HttpRange.parseRanges(request.getHeader(HttpHeaders.RANGE));
+            if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT)) && ranges.size() <= 1) {
+                long start = 0;
+                long end = length - 1;
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                    response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+                }
+                response.setContentType(mediaType.toString());
+                response.setContentLengthLong(end - start + 1);
+                response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+                response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+                response.setHeader(HttpHeaders.ETAG, file.getEtag());
+                request.setAttribute(SENDFILE_FILENAME, file.getPath().toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START, start);
+                request.setAttribute(SENDFILE_END, end + 1);
+                return null;
+            }
+
+            return ResponseEntity.ok()
+                    .contentType(mediaType)
+                    .cacheControl(cacheControl)
+                    .eTag(file.getEtag())
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .body(new FileSystemResource(file.getPath()));
+        } catch (IllegalArgumentException iae) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).build();
+        } catch (ServiceException se) {
+            logger.warn("ServiceException getImage id={}: {}", id, se.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        } catch (Exception e) {
+            logger.error("Unexpected error getImage id={}", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+}
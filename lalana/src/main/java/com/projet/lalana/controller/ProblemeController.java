@@ -4,8 +4,10 @@ import com.projet.lalana.response.ApiResponse;
 import com.projet.lalana.service.ProblemeService;
 import com.projet.lalana.service.ServiceException;
 import com.projet.lalana.dto.ProblemeDto;
+import com.projet.lalana.dto.DurationStatsDto;
 import com.projet.lalana.dto.ManagerStatsDto;
 import com.projet.lalana.model.Probleme;
+import com.projet.lalana.dto.ListFilter;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +16,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.ArrayList;
@@ -29,8 +32,11 @@ public class ProblemeController {
     private final ProblemeService problemeService;
 
     @GetMapping
-    public ApiResponse getAll() {
+    public ApiResponse getAll(ListFilter filter) {
         try {
+            if (filter.isPaged()) {
+                return new ApiResponse(true, "Problèmes récupérés", problemeService.getPage(filter, false));
+            }
             List<Probleme> list = problemeService.getAll();
             return new ApiResponse(true, "Problèmes récupérés", list);
         } catch (ServiceException se) {
@@ -43,8 +49,11 @@ public class ProblemeController {
     }
 
     @GetMapping("/nonresolus")
-    public ApiResponse getNonResolus() {
+    public ApiResponse getNonResolus(ListFilter filter) {
         try {
+            if (filter.isPaged()) {
+                return new ApiResponse(true, "Problèmes non résolus récupérés", problemeService.getPage(filter, true));
+            }
             List<Probleme> list = problemeService.findNonResolus();
             return new ApiResponse(true, "Problèmes non résolus récupérés", list);
         } catch (ServiceException se) {
@@ -113,9 +122,10 @@ public class ProblemeController {
 
 
     @GetMapping("/manager-stats")
-    public ApiResponse getManagerStats() {
+    public ApiResponse getManagerStats(@RequestParam(defaultValue = "0") int page,
+            @RequestParam(required = false) Integer size) {
         try {
-            ManagerStatsDto stats = problemeService.getManagerStats();
+            ManagerStatsDto stats = problemeService.getManagerStats(page, size);
             return new ApiResponse(true, "Statistiques calculées avec succès", stats);
         } catch (ServiceException se) {
             logger.error("ServiceException getManagerStats", se);
@@ -126,4 +136,33 @@ public class ProblemeController {
         }
     }
 
+    @GetMapping("/manager-stats/durations")
+    public ApiResponse getDurationStats(@RequestParam(required = false) Integer entrepriseId,
+            @RequestParam(required = false) String from, @RequestParam(required = false) String to) {
+        try {
+            List<DurationStatsDto> durations = problemeService.getDurationStats(entrepriseId, from, to);
+            return new ApiResponse(true, "OK", durations);
+        } catch (ServiceException se) {
+            logger.error("ServiceException getDurationStats", se);
+            return new ApiResponse(false, se.getMessage(), null);
+        } catch (Exception e) {
+            logger.error("Unexpected error getDurationStats", e);
+            return new ApiResponse(false, "Erreur serveur lors du calcul des durées", null);
+        }
+    }
+
+    @PostMapping("/manager-stats/rebuild")
+    public ApiResponse rebuildManagerStats() {
+        try {
+            int problemes = problemeService.rebuildManagerStats();
+            return new ApiResponse(true, "Statistiques reconstruites (" + problemes + " problèmes)", problemes);
+        } catch (ServiceException se) {
+            logger.error("ServiceException rebuildManagerStats", se);
+            return new ApiResponse(false, se.getMessage(), null);
+        } catch (Exception e) {
+            logger.error("Unexpected error rebuildManagerStats", e);
+            return new ApiResponse(false, "Erreur serveur lors de la reconstruction des statistiques", null);
+        }
+    }
+
 }
@@ -6,6 +6,7 @@ import com.projet.lalana.service.SignalementService;
 import com.projet.lalana.model.Signalement;
 import com.projet.lalana.model.Probleme;
 import com.projet.lalana.dto.RapportTech;
+import com.projet.lalana.dto.ListFilter;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,8 +29,11 @@ public class SignalementController {
     private final SignalementService signalementService;
 
     @GetMapping
-    public ApiResponse getAll() {
+    public ApiResponse getAll(ListFilter filter) {
         try {
+            if (filter.isPaged()) {
+                return new ApiResponse(true, "Signalements récupérés", signalementService.getPage(filter, false));
+            }
             List<Signalement> list = signalementService.getAll();
             return new ApiResponse(true, "Signalements récupérés", list);
         } catch (ServiceException se) {
@@ -42,8 +46,11 @@ public class SignalementController {
     }
 
     @GetMapping("/nonresolus")
-    public ApiResponse getNonResolus() {
+    public ApiResponse getNonResolus(ListFilter filter) {
         try {
+            if (filter.isPaged()) {
+                return new ApiResponse(true, "Signalements non résolus récupérés", signalementService.getPage(filter, true));
+            }
             List<Signalement> list = signalementService.getSignalementsNonResolus();
             return new ApiResponse(true, "Signalements non résolus récupérés", list);
         } catch (ServiceException se) {
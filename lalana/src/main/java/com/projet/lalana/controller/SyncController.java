@@ -1,13 +1,19 @@
 package com.projet.lalana.controller;
 
 import com.projet.lalana.response.ApiResponse;
-import com.projet.lalana.service.SyncService;
+import com.projet.lalana.service.SyncEngineService;
+import com.projet.lalana.service.SyncJobService;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/sync")
@@ -15,16 +21,72 @@ import org.springframework.web.bind.annotation.RestController;
 public class SyncController {
 
     private static final Logger logger = LoggerFactory.getLogger(SyncController.class);
-    private final SyncService syncService;
+    private final SyncEngineService syncEngineService;
+    private final SyncJobService syncJobService;
 
+    /**
+     * Ancien point d'entree du cycle complet, conserve pour les clients existants : il ne bloque
+     * plus le thread HTTP pendant le cycle mais soumet un job comme POST /sync/jobs (sans snapshot)
+     * et retourne ce job immediatement. Le resultat se lit sur GET /sync/jobs/{id}.
+     *
+     * @deprecated utiliser POST /sync/jobs
+     */
+    @Deprecated
     @PostMapping
-    public ApiResponse runSync() {
+    public ApiResponse runSync(@RequestParam(required = false) String mode,
+            @RequestParam(required = false) String since) {
         try {
-            var out = syncService.runFullSyncCycle();
-            return new ApiResponse(true, "Sync completed", out);
+            return new ApiResponse(true, "Sync started",
+                    syncJobService.submit(false, "delta".equalsIgnoreCase(mode), since));
         } catch (Exception e) {
             logger.error("Error during sync", e);
             return new ApiResponse(false, "Sync failed: " + e.getMessage(), null);
         }
     }
+
+    @PostMapping("/trigger")
+    public ApiResponse trigger() {
+        try {
+            boolean started = syncEngineService.trigger();
+            return new ApiResponse(started, started ? "Sync started" : "Sync already running",
+                    syncEngineService.getStatus());
+        } catch (Exception e) {
+            logger.error("Error triggering sync", e);
+            return new ApiResponse(false, "Sync trigger failed: " + e.getMessage(), null);
+        }
+    }
+
+    /**
+     * Soumet un cycle complet en job asynchrone et retourne son id immediatement.
+     * snapshot=true ajoute au resultat les signalements et problemes (DTO) en fin de job ;
+     * mode=delta (avec since) n'y ajoute que les changements et un jeton de version.
+     */
+    @PostMapping("/jobs")
+    public ApiResponse submitJob(@RequestParam(defaultValue = "false") boolean snapshot,
+            @RequestParam(required = false) String mode, @RequestParam(required = false) String since) {
+        try {
+            return new ApiResponse(true, "Sync job submitted",
+                    syncJobService.submit(snapshot, "delta".equalsIgnoreCase(mode), since));
+        } catch (Exception e) {
+            logger.error("Error submitting sync job", e);
+            return new ApiResponse(false, "Sync job submission failed: " + e.getMessage(), null);
+        }
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ApiResponse getJob(@PathVariable String id) {
+        return syncJobService.get(id)
+                .map(job -> new ApiResponse(true, "Sync job", job))
+                .orElseGet(() -> new ApiResponse(false, "Sync job not found: " + id, null));
+    }
+
+    @GetMapping(path = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamJob(@PathVariable String id) {
+        return syncJobService.subscribe(id);
+    }
+
+    @GetMapping("/status")
+    public ApiResponse status() {
+        return new ApiResponse(true, "Sync status", syncEngineService.getStatus());
+    }
 }
@@ -0,0 +1,21 @@
+package com.projet.lalana.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Page d'une liste parcourue par curseur (ordre id decroissant).
+ * nextCursor est null sur la derniere page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPage<T> {
+
+    private List<T> items;
+    private Integer nextCursor;
+    private int limit;
+}
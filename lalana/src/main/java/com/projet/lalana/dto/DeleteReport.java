@@ -0,0 +1,41 @@
+package com.projet.lalana.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compte rendu d'une suppression en masse dans Firestore.
+ */
+@Data
+@NoArgsConstructor
+public class DeleteReport {
+
+    /** Nombre maximal d'ids en echec conserves dans le rapport. */
+    private static final int MAX_FAILED_IDS = 100;
+
+    private String collection;
+    private int matched;
+    private int deleted;
+    private int failed;
+    private int pages;
+    private long durationMs;
+    private List<String> failedIds = new ArrayList<>();
+
+    public DeleteReport(String collection) {
+        this.collection = collection;
+    }
+
+    public synchronized void succeeded() {
+        deleted++;
+    }
+
+    public synchronized void failed(String docId) {
+        failed++;
+        if (failedIds.size() < MAX_FAILED_IDS) {
+            failedIds.add(docId);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.projet.lalana.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distribution d'une duree de transition, en heures : nombre de problemes, p50/p90/p99 et histogramme.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DurationStatsDto {
+
+    private String metric;
+    private long count;
+    private Map<String, Double> percentiles;
+    private List<Map<String, Object>> histogram;
+}
@@ -0,0 +1,44 @@
+package com.projet.lalana.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+/**
+ * Filtres et curseur des listes paginees de signalements / problemes.
+ * Tous les champs sont optionnels ; un champ null ne filtre pas. Lie directement aux parametres
+ * de requete (ex. ?status=10&limit=50&cursor=1234).
+ */
+@Data
+@NoArgsConstructor
+public class ListFilter {
+
+    /** Valeur de statut (10, 20, 30). */
+    private Integer status;
+    private Integer entrepriseId;
+    private Integer userId;
+    /** Date de creation du signalement, bornes incluses. */
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate from;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+    private LocalDate to;
+    /** Rectangle englobant sur les coordonnees du point (x, y). */
+    private Double minX;
+    private Double maxX;
+    private Double minY;
+    private Double maxY;
+    /** Id du dernier element de la page precedente ; les elements suivants ont un id strictement inferieur. */
+    private Integer cursor;
+    private Integer limit;
+
+    /**
+     * Vrai des qu'un parametre est fourni : sans aucun parametre, les listes restent renvoyees
+     * en entier comme avant (compatibilite du front).
+     */
+    public boolean isPaged() {
+        return status != null || entrepriseId != null || userId != null || from != null || to != null
+                || minX != null || maxX != null || minY != null || maxY != null || cursor != null || limit != null;
+    }
+}
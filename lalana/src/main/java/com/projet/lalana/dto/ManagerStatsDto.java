@@ -17,8 +17,16 @@ public class ManagerStatsDto {
     private Map<String, Integer> counts;
     private Map<String, Double> averages;
     private Map<String, Integer> minMax;
+    // Histogramme des durées totales (nouveau -> terminé), classes en heures
     private List<Map<String, Object>> histogram;
     private List<ProblemeSampleDto> samples;
+    // Pagination de samples (counts.total donne le nombre total d'echantillons)
+    private int samplesPage;
+    private int samplesSize;
+    // Répartition par entreprise (statistiques matérialisées uniquement)
+    private List<EntrepriseStatsDto> entreprises;
+    // p50/p90/p99 en heures par transition (nouveauToEnCours, enCoursToTermine, total)
+    private Map<String, Map<String, Double>> percentiles;
 
 
     @Data
@@ -33,4 +41,15 @@ public class ManagerStatsDto {
         private LocalDateTime dateEnCoursStatus;
         private LocalDateTime dateTermineStatus;
     }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class EntrepriseStatsDto {
+        private Integer entrepriseId;
+        private String entrepriseName;
+        private Map<String, Integer> counts;
+        private Map<String, Double> averages;
+        private Map<String, Integer> minMax;
+    }
 }
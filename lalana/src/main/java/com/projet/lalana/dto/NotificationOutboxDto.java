@@ -5,12 +5,9 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
- * DTO représentant une intention de notification à écrire dans Firestore.
- * Cette classe modélise le pattern Transactional Outbox pour garantir
+ * DTO représentant une intention de notification, enregistrée dans la table
+ * notification_outbox par NotificationOutboxService.enqueue pour garantir
  * que chaque notification est une conséquence d'un commit métier réussi.
  */
 @Data
@@ -64,39 +61,6 @@ public class NotificationOutboxDto {
     private String oldStatus;
     private String newStatus;
     
-    /**
-     * Convertit le DTO en Map pour l'envoi à Firestore
-     */
-    public Map<String, Object> toFirestoreMap() {
-        Map<String, Object> map = new HashMap<>();
-        map.put("type", type);
-        map.put("entityId", entityId);
-        map.put("action", action);
-        map.put("message", message);
-        map.put("title", title);
-        map.put("userToken", userToken);
-        map.put("userId", userId);
-        map.put("status", status != null ? status : NotificationStatus.READY.name());
-        map.put("notificationSent", notificationSent != null ? notificationSent : false);
-        map.put("createdAt", createdAt);
-        map.put("sentAt", sentAt);
-        map.put("errorMessage", errorMessage);
-        map.put("retryCount", retryCount != null ? retryCount : 0);
-        
-        // Données optionnelles
-        if (signalementDescription != null) {
-            map.put("signalementDescription", signalementDescription);
-        }
-        if (oldStatus != null) {
-            map.put("oldStatus", oldStatus);
-        }
-        if (newStatus != null) {
-            map.put("newStatus", newStatus);
-        }
-        
-        return map;
-    }
-    
     /**
      * Builder helper pour créer une notification de création de signalement
      */
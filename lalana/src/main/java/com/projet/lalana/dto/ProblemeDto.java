@@ -51,6 +51,66 @@ public class ProblemeDto {
 
     public static ProblemeDto fromEntity(Probleme p) {
         if (p == null) return null;
+        ProblemeDto d = fromEntityWithoutImages(p);
+
+        if (p.getSignalement() != null) {
+            Signalement s = p.getSignalement();
+            List<SignalementImageDTO> imageDtos = new ArrayList<>();
+            try {
+                System.out.println("ProblemeDto.fromEntity - Probleme ID: " + p.getId() + ", Signalement ID: " + s.getId());
+                if (s.getImages() != null) {
+                    System.out.println("ProblemeDto.fromEntity - Images collection is not null, size: " + s.getImages().size());
+                    for (SignalementImage img : s.getImages()) {
+                        System.out.println("ProblemeDto.fromEntity - Processing image: " + img.getNomFichier());
+                        imageDtos.add(toImageDto(img));
+                    }
+                    System.out.println("ProblemeDto.fromEntity - Total images mapped: " + imageDtos.size());
+                } else {
+                    System.out.println("ProblemeDto.fromEntity - Images collection is NULL (lazy loading failed?)");
+                }
+            } catch (Exception e) {
+                System.err.println("ProblemeDto.fromEntity - ERROR loading images for signalement " + s.getId() + ": " + e.getClass().getName() + " - " + e.getMessage());
+                e.printStackTrace();
+            }
+            d.setImages(imageDtos);
+            System.out.println("ProblemeDto.fromEntity - Final DTO has " + (d.getImages() != null ? d.getImages().size() : 0) + " images");
+        }
+
+        return d;
+    }
+
+    /**
+     * Same mapping as {@link #fromEntity(Probleme)} but with images that were already
+     * loaded by the caller (bulk lookup), so the lazy images collection is never touched.
+     */
+    public static ProblemeDto fromEntity(Probleme p, List<SignalementImage> images) {
+        if (p == null) return null;
+        ProblemeDto d = fromEntityWithoutImages(p);
+        if (p.getSignalement() != null) {
+            List<SignalementImageDTO> imageDtos = new ArrayList<>();
+            if (images != null) {
+                for (SignalementImage img : images) {
+                    imageDtos.add(toImageDto(img));
+                }
+            }
+            d.setImages(imageDtos);
+        }
+        return d;
+    }
+
+    private static SignalementImageDTO toImageDto(SignalementImage img) {
+        SignalementImageDTO imgDto = new SignalementImageDTO();
+        imgDto.setId(img.getId());
+        imgDto.setCheminLocal(img.getCheminLocal());
+        imgDto.setThumbnailUrl(img.getThumbnailUrl());
+        imgDto.setMediumUrl(img.getMediumUrl());
+        imgDto.setCheminOnline(img.getCheminOnline());
+        imgDto.setNomFichier(img.getNomFichier());
+        imgDto.setUrl(img.getUrl());
+        return imgDto;
+    }
+
+    private static ProblemeDto fromEntityWithoutImages(Probleme p) {
         ProblemeDto d = new ProblemeDto();
         d.setId(p.getId());
         d.setSurface(p.getSurface());
@@ -81,30 +141,6 @@ public class ProblemeDto {
             }
             d.setDescription(s.getDescription());
             d.setCreatedAt(s.getCreatedAt());
-            
-            List<SignalementImageDTO> imageDtos = new ArrayList<>();
-            try {
-                System.out.println("ProblemeDto.fromEntity - Probleme ID: " + p.getId() + ", Signalement ID: " + s.getId());
-                if (s.getImages() != null) {
-                    System.out.println("ProblemeDto.fromEntity - Images collection is not null, size: " + s.getImages().size());
-                    for (SignalementImage img : s.getImages()) {
-                        System.out.println("ProblemeDto.fromEntity - Processing image: " + img.getNomFichier());
-                        SignalementImageDTO imgDto = new SignalementImageDTO();
-                        imgDto.setCheminLocal(img.getCheminLocal());
-                        imgDto.setCheminOnline(img.getCheminOnline());
-                        imgDto.setNomFichier(img.getNomFichier());
-                        imageDtos.add(imgDto);
-                    }
-                    System.out.println("ProblemeDto.fromEntity - Total images mapped: " + imageDtos.size());
-                } else {
-                    System.out.println("ProblemeDto.fromEntity - Images collection is NULL (lazy loading failed?)");
-                }
-            } catch (Exception e) {
-                System.err.println("ProblemeDto.fromEntity - ERROR loading images for signalement " + s.getId() + ": " + e.getClass().getName() + " - " + e.getMessage());
-                e.printStackTrace();
-            }
-            d.setImages(imageDtos);
-            System.out.println("ProblemeDto.fromEntity - Final DTO has " + (d.getImages() != null ? d.getImages().size() : 0) + " images");
         }
 
         d.setNiveau(p.getNiveau());
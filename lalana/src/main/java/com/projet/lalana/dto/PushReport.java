@@ -0,0 +1,46 @@
+package com.projet.lalana.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compte rendu d'une poussée par lots vers Firestore : totaux et résultat de chaque lot.
+ */
+@Data
+@NoArgsConstructor
+public class PushReport {
+
+    private int total;
+    private int pushed;
+    private int failed;
+    private List<ChunkReport> chunks = new ArrayList<>();
+
+    public PushReport(int total) {
+        this.total = total;
+    }
+
+    public void chunkSucceeded(int index, int size, long durationMs) {
+        pushed += size;
+        chunks.add(new ChunkReport(index, size, true, durationMs, null));
+    }
+
+    public void chunkFailed(int index, int size, long durationMs, String error) {
+        failed += size;
+        chunks.add(new ChunkReport(index, size, false, durationMs, error));
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ChunkReport {
+        private int index;
+        private int size;
+        private boolean success;
+        private long durationMs;
+        private String error;
+    }
+}
@@ -61,9 +61,13 @@ public class SignalementDto {
                 for (SignalementImage img : s.getImages()) {
                     System.out.println("SignalementDto.fromEntity - Processing image: " + img.getNomFichier());
                     SignalementImageDTO imgDto = new SignalementImageDTO();
+                    imgDto.setId(img.getId());
                     imgDto.setCheminLocal(img.getCheminLocal());
+                    imgDto.setThumbnailUrl(img.getThumbnailUrl());
+                    imgDto.setMediumUrl(img.getMediumUrl());
                     imgDto.setCheminOnline(img.getCheminOnline());
                     imgDto.setNomFichier(img.getNomFichier());
+                    imgDto.setUrl(img.getUrl());
                     imageDtos.add(imgDto);
                 }
                 System.out.println("SignalementDto.fromEntity - Total images mapped: " + imageDtos.size());
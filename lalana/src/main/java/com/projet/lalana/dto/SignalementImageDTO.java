@@ -10,7 +10,13 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @Builder
 public class SignalementImageDTO {
+    /** Id de la ligne signalement_images (GET /api/images/{id}) ; null pour une image Firestore non importee. */
+    private Integer id;
     private String cheminLocal;
     private String cheminOnline;
     private String nomFichier;
+    /** URL relative a l'API ou l'image est servie (voir SignalementImage#getUrl). */
+    private String url;
+    private String thumbnailUrl;
+    private String mediumUrl;
 }
@@ -0,0 +1,66 @@
+package com.projet.lalana.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Job de synchronisation asynchrone : etat global, progression par phase et resultat.
+ */
+@Data
+@NoArgsConstructor
+public class SyncJob {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED, SKIPPED
+    }
+
+    public enum PhaseState {
+        RUNNING, DONE, FAILED
+    }
+
+    private String id;
+    private Status status;
+    private boolean includeSnapshot;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private Map<String, PhaseProgress> phases = new LinkedHashMap<>();
+    private Map<String, Object> result;
+    private Map<String, Object> snapshot;
+    private String error;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PhaseProgress {
+        private PhaseState state;
+        private int done;
+        private int total;
+        private Long durationMs;
+        private String error;
+    }
+
+    /**
+     * Copie detachee (phases recopiees) pour la serialisation pendant que le job avance.
+     */
+    public SyncJob copy() {
+        SyncJob c = new SyncJob();
+        c.id = id;
+        c.status = status;
+        c.includeSnapshot = includeSnapshot;
+        c.createdAt = createdAt;
+        c.startedAt = startedAt;
+        c.finishedAt = finishedAt;
+        phases.forEach((name, p) -> c.phases.put(name,
+                new PhaseProgress(p.state, p.done, p.total, p.durationMs, p.error)));
+        c.result = result;
+        c.snapshot = snapshot;
+        c.error = error;
+        return c;
+    }
+}
@@ -0,0 +1,32 @@
+package com.projet.lalana.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Etat du moteur de synchronisation : execution en cours et dernier resultat par tache.
+ */
+@Data
+@NoArgsConstructor
+public class SyncRunStatus {
+
+    private boolean running;
+    private String currentTask;
+    private String currentTrigger;
+    private LocalDateTime startedAt;
+
+    private String lastTask;
+    private LocalDateTime lastFinishedAt;
+    private Long lastDurationMs;
+    private Map<String, Object> lastResult;
+    private String lastError;
+
+    /** Derniere fin d'execution de chaque tache (full, import, push, cleanup, fcm_tokens). */
+    private Map<String, LocalDateTime> lastRunByTask = new HashMap<>();
+    /** Executions ignorees car une autre etait en cours (ici ou sur une autre instance). */
+    private long skippedRuns;
+}
@@ -0,0 +1,38 @@
+package com.projet.lalana.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serie temporelle d'entrees d'historique (signalements ou problemes), par jour ou par semaine.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TrendSeriesDto {
+
+    private String source;
+    private String granularity;
+    private LocalDate from;
+    private LocalDate to;
+    private Integer entrepriseId;
+    private Integer niveau;
+    private List<TrendPointDto> points;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TrendPointDto {
+        private LocalDate bucketStart;
+        // nombre d'entrees par valeur de statut (10 nouveau, 20 en cours, 30 termine)
+        private Map<Integer, Long> byStatus;
+        private long total;
+        // en attente a la fin du bucket : entrees en statut 10 moins entrees en statut 30, cumulees
+        private long backlog;
+    }
+}
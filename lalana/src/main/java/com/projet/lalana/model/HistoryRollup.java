@@ -0,0 +1,59 @@
+package com.projet.lalana.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Compteur pre-agrege des entrees d'historique (signalement_history, probleme_history)
+ * par periode (jour ou semaine), statut, entreprise et niveau. 0 signifie "sans" pour
+ * entreprise_id et niveau (toujours le cas pour les signalements).
+ */
+@Entity
+@Table(name = "history_rollup", indexes = {
+        @Index(name = "idx_history_rollup_range", columnList = "source, granularity, bucket_start")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class HistoryRollup {
+
+    public static final String SOURCE_SIGNALEMENT = "SIGNALEMENT";
+    public static final String SOURCE_PROBLEME = "PROBLEME";
+    public static final String DAY = "DAY";
+    public static final String WEEK = "WEEK";
+
+    @Id
+    @Column(name = "rollup_key", length = 120)
+    private String rollupKey;
+
+    @Column(length = 20, nullable = false)
+    private String source;
+
+    @Column(length = 10, nullable = false)
+    private String granularity;
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDate bucketStart;
+
+    @Column(name = "status_valeur", nullable = false)
+    private Integer statusValeur;
+
+    @Column(name = "entreprise_id", nullable = false)
+    private Integer entrepriseId;
+
+    @Column(nullable = false)
+    private Integer niveau;
+
+    @Column(name = "event_count", nullable = false)
+    private long eventCount;
+
+    public static String key(String source, String granularity, LocalDate bucketStart, int statusValeur,
+            int entrepriseId, int niveau) {
+        return String.join("|", source, granularity, bucketStart.toString(), String.valueOf(statusValeur),
+                String.valueOf(entrepriseId), String.valueOf(niveau));
+    }
+}
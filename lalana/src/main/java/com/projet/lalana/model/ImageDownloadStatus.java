@@ -0,0 +1,11 @@
+package com.projet.lalana.model;
+
+/**
+ * Etat du telechargement local d'une image de signalement.
+ * Les lignes anterieures a la colonne (valeur NULL) sont considerees comme telechargees.
+ */
+public enum ImageDownloadStatus {
+    PENDING,
+    DONE,
+    ERROR
+}
@@ -0,0 +1,79 @@
+package com.projet.lalana.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Intention de notification ecrite dans la meme transaction que le changement metier,
+ * puis envoyee par NotificationRelayService.
+ */
+@Entity
+@Table(name = "notification_outbox", indexes = {
+        @Index(name = "idx_notification_outbox_status", columnList = "status, id"),
+        @Index(name = "idx_notification_outbox_retry", columnList = "status, next_attempt_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class NotificationOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(length = 20, nullable = false)
+    private String type;
+
+    @Column(name = "entity_id")
+    private Integer entityId;
+
+    @Column(length = 30, nullable = false)
+    private String action;
+
+    @Column(length = 255)
+    private String title;
+
+    @Column(columnDefinition = "TEXT")
+    private String message;
+
+    @Column(name = "user_id", length = 50)
+    private String userId;
+
+    @Column(name = "firebase_uid", length = 255)
+    private String firebaseUid;
+
+    @Column(columnDefinition = "TEXT")
+    private String description;
+
+    @Column(name = "old_status", length = 50)
+    private String oldStatus;
+
+    @Column(name = "new_status", length = 50)
+    private String newStatus;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20, nullable = false)
+    private NotificationOutboxStatus status = NotificationOutboxStatus.READY;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "next_attempt_at")
+    private Instant nextAttemptAt;
+
+    @Column(name = "locked_at")
+    private Instant lockedAt;
+
+    @Column(name = "sent_at")
+    private Instant sentAt;
+}
@@ -0,0 +1,15 @@
+package com.projet.lalana.model;
+
+/**
+ * Etat d'une ligne de la table notification_outbox.
+ * SENDING marque une ligne reclamee par le relais ; elle redevient eligible si le relais
+ * ne l'a pas soldee avant notification.outbox.stale-after-ms. ERROR est un echec transitoire
+ * retente a next_attempt_at ; DEAD est abandonne (erreur definitive ou tentatives epuisees).
+ */
+public enum NotificationOutboxStatus {
+    READY,
+    SENDING,
+    SENT,
+    ERROR,
+    DEAD
+}
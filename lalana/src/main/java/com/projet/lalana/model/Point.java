@@ -13,7 +13,8 @@ import lombok.*;
 public class Point {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "points_seq")
+    @SequenceGenerator(name = "points_seq", sequenceName = "points_id_seq", allocationSize = 50)
     private Integer id;
 
     @Column(nullable = false)
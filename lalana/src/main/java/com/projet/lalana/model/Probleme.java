@@ -4,6 +4,9 @@ import jakarta.persistence.*;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import lombok.*;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "probleme")
@@ -39,6 +42,11 @@ public class Probleme {
     @Column(name = "firestore_synced", nullable = false)
     private Boolean firestoreSynced = false;
     
+    /** Derniere modification (jeton de version des reponses delta de /sync). */
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
     @Min(1)
     @Max(10)
     @Column(name = "niveau", nullable = false, columnDefinition = "INTEGER DEFAULT 1")
@@ -0,0 +1,54 @@
+package com.projet.lalana.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Esquisse persistee de la distribution d'une duree de transition (voir DurationSketch),
+ * par portee (GLOBAL ou ENTREPRISE:{id}), periode (ALL ou mois yyyy-MM de fin de transition)
+ * et metrique (nouveauToEnCours, enCoursToTermine, total).
+ */
+@Entity
+@Table(name = "probleme_duration_sketch", indexes = {
+        @Index(name = "idx_probleme_duration_sketch_scope", columnList = "scope_key, period")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class ProblemeDurationSketch {
+
+    public static final String ALL_PERIODS = "ALL";
+
+    @Id
+    @Column(name = "sketch_key", length = 100)
+    private String sketchKey;
+
+    @Column(name = "scope_key", length = 50, nullable = false)
+    private String scopeKey;
+
+    @Column(name = "entreprise_id")
+    private Integer entrepriseId;
+
+    @Column(length = 7, nullable = false)
+    private String period;
+
+    @Column(length = 30, nullable = false)
+    private String metric;
+
+    @Column(name = "total_count", nullable = false)
+    private long totalCount;
+
+    @Column(columnDefinition = "bigint[]", nullable = false)
+    private long[] buckets;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public static String key(String scopeKey, String period, String metric) {
+        return scopeKey + "|" + period + "|" + metric;
+    }
+}
@@ -1,11 +1,13 @@
 package com.projet.lalana.model;
 
+import com.projet.lalana.service.HistoryRollupListener;
 import jakarta.persistence.*;
 import lombok.*;
 
 import java.time.LocalDateTime;
 
 @Entity
+@EntityListeners(HistoryRollupListener.class)
 @Table(name = "probleme_history")
 @Getter
 @Setter
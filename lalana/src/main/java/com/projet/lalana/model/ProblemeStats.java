@@ -0,0 +1,85 @@
+package com.projet.lalana.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Statistiques manager materialisees. Une ligne GLOBAL et une ligne ENTREPRISE:{id} par entreprise ;
+ * les durees sont en jours entiers (somme, nombre, min, max) par transition.
+ */
+@Entity
+@Table(name = "probleme_stats")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class ProblemeStats {
+
+    public static final String GLOBAL_KEY = "GLOBAL";
+    public static final String ENTREPRISE_KEY_PREFIX = "ENTREPRISE:";
+
+    @Id
+    @Column(name = "stats_key", length = 50)
+    private String statsKey;
+
+    @Column(name = "entreprise_id")
+    private Integer entrepriseId;
+
+    @Column(name = "nouveau_count", nullable = false)
+    private long nouveauCount;
+
+    @Column(name = "en_cours_count", nullable = false)
+    private long enCoursCount;
+
+    @Column(name = "termine_count", nullable = false)
+    private long termineCount;
+
+    @Column(name = "total_count", nullable = false)
+    private long totalCount;
+
+    @Column(name = "nouveau_to_en_cours_sum", nullable = false)
+    private long nouveauToEnCoursSum;
+
+    @Column(name = "nouveau_to_en_cours_count", nullable = false)
+    private long nouveauToEnCoursCount;
+
+    @Column(name = "nouveau_to_en_cours_min")
+    private Integer nouveauToEnCoursMin;
+
+    @Column(name = "nouveau_to_en_cours_max")
+    private Integer nouveauToEnCoursMax;
+
+    @Column(name = "en_cours_to_termine_sum", nullable = false)
+    private long enCoursToTermineSum;
+
+    @Column(name = "en_cours_to_termine_count", nullable = false)
+    private long enCoursToTermineCount;
+
+    @Column(name = "en_cours_to_termine_min")
+    private Integer enCoursToTermineMin;
+
+    @Column(name = "en_cours_to_termine_max")
+    private Integer enCoursToTermineMax;
+
+    @Column(name = "total_sum", nullable = false)
+    private long totalSum;
+
+    @Column(name = "total_duration_count", nullable = false)
+    private long totalDurationCount;
+
+    @Column(name = "total_min")
+    private Integer totalMin;
+
+    @Column(name = "total_max")
+    private Integer totalMax;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public static String entrepriseKey(Integer entrepriseId) {
+        return ENTREPRISE_KEY_PREFIX + entrepriseId;
+    }
+}
@@ -0,0 +1,39 @@
+package com.projet.lalana.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Etat d'un probleme pour les statistiques materialisees : statut courant et premiere date
+ * de passage a chaque statut. Maintenu par ProblemeStatsStore.
+ */
+@Entity
+@Table(name = "probleme_transition")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class ProblemeTransition {
+
+    @Id
+    @Column(name = "probleme_id")
+    private Integer problemeId;
+
+    @Column(name = "entreprise_id")
+    private Integer entrepriseId;
+
+    @Column(name = "status_valeur")
+    private Integer statusValeur;
+
+    @Column(name = "nouveau_at")
+    private LocalDateTime nouveauAt;
+
+    @Column(name = "en_cours_at")
+    private LocalDateTime enCoursAt;
+
+    @Column(name = "termine_at")
+    private LocalDateTime termineAt;
+}
@@ -2,6 +2,7 @@ package com.projet.lalana.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.LocalDateTime;
 
@@ -17,7 +18,8 @@ import java.util.List;
 public class Signalement {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "signalement_seq")
+    @SequenceGenerator(name = "signalement_seq", sequenceName = "signalement_id_seq", allocationSize = 50)
     private Integer id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -40,6 +42,15 @@ public class Signalement {
     @Column(name = "firestore_synced", nullable = false , columnDefinition = "BOOLEAN DEFAULT FALSE")
     private Boolean firestoreSynced;
 
+    /** Derniere modification (jeton de version des reponses delta de /sync). */
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    /** Id du document signalementAdd d'origine (unique) : rend l'import idempotent. */
+    @Column(name = "firestore_doc_id", unique = true, length = 128)
+    private String firestoreDocId;
+
     @OneToMany(mappedBy = "signalement", fetch = FetchType.LAZY)
     private List<SignalementImage> images;
 }
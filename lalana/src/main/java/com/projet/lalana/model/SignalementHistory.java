@@ -1,11 +1,13 @@
 package com.projet.lalana.model;
 
+import com.projet.lalana.service.HistoryRollupListener;
 import jakarta.persistence.*;
 import lombok.*;
 
 import java.time.LocalDateTime;
 
 @Entity
+@EntityListeners(HistoryRollupListener.class)
 @Table(name = "signalement_history")
 @Getter
 @Setter
@@ -15,7 +17,8 @@ import java.time.LocalDateTime;
 public class SignalementHistory {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "signalement_history_seq")
+    @SequenceGenerator(name = "signalement_history_seq", sequenceName = "signalement_history_id_seq", allocationSize = 50)
     private Integer id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -14,7 +14,8 @@ import lombok.*;
 public class SignalementImage {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "signalement_images_seq")
+    @SequenceGenerator(name = "signalement_images_seq", sequenceName = "signalement_images_id_seq", allocationSize = 50)
     private Integer id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -30,4 +31,50 @@ public class SignalementImage {
 
     @Column(name = "nom_fichier")
     private String nomFichier;
+
+    @JsonIgnore
+    @Column(name = "chemin_thumbnail")
+    private String cheminThumbnail;
+
+    @JsonIgnore
+    @Column(name = "chemin_medium")
+    private String cheminMedium;
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "download_status", length = 20)
+    private ImageDownloadStatus downloadStatus;
+
+    @Column(name = "download_attempts")
+    private Integer downloadAttempts;
+
+    @Column(name = "download_error", length = 500)
+    private String downloadError;
+
+    /**
+     * URL relative servant l'image : /api/images/{id} pour les fichiers du store (nommes par
+     * leur hash), /images/signalement/{nomFichier} pour les fichiers historiques. Null tant que
+     * l'image n'est pas telechargee.
+     */
+    public String getUrl() {
+        if (contentHash != null && id != null) {
+            return "/api/images/" + id;
+        }
+        if (contentHash == null && cheminLocal != null && nomFichier != null) {
+            return "/images/signalement/" + nomFichier;
+        }
+        return null;
+    }
+
+    /** URL de la miniature ; le chemin disque reste cote serveur. */
+    public String getThumbnailUrl() {
+        return cheminThumbnail != null && id != null ? "/api/images/" + id + "?variant=thumb" : null;
+    }
+
+    /** URL de la version moyenne ; le chemin disque reste cote serveur. */
+    public String getMediumUrl() {
+        return cheminMedium != null && id != null ? "/api/images/" + id + "?variant=medium" : null;
+    }
 }
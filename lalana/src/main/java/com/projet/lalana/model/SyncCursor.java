@@ -0,0 +1,38 @@
+package com.projet.lalana.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * Curseur persistant (high-water mark) d'un flux d'import Firestore :
+ * dernier updatedAt traite et id du document correspondant pour departager les egalites.
+ */
+@Entity
+@Table(name = "sync_cursor")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class SyncCursor {
+
+    @Id
+    @Column(length = 50)
+    private String name;
+
+    @Column(name = "last_update_time")
+    private Instant lastUpdateTime;
+
+    @Column(name = "last_doc_id", length = 255)
+    private String lastDocId;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public SyncCursor(String name) {
+        this.name = name;
+    }
+}
@@ -3,6 +3,8 @@ package com.projet.lalana.model;
 import jakarta.persistence.*;
 import lombok.*;
 
+import java.time.Instant;
+
 @Entity
 @Table(name = "users")
 @Getter
@@ -33,4 +35,8 @@ public class User {
 
     @Column(name = "fcm_token", length = 255)
     private String fcmToken;
+
+    /** updatedAt du document userTokens lors de la derniere lecture du token. */
+    @Column(name = "fcm_token_updated_at")
+    private Instant fcmTokenUpdatedAt;
 }
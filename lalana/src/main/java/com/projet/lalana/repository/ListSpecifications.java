@@ -0,0 +1,119 @@
+package com.projet.lalana.repository;
+
+import com.projet.lalana.dto.ListFilter;
+import com.projet.lalana.model.Point;
+import com.projet.lalana.model.Probleme;
+import com.projet.lalana.model.ProblemeStatus;
+import com.projet.lalana.model.Signalement;
+import com.projet.lalana.model.SignalementStatus;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Specifications des listes paginees par curseur. Les associations "to-one" serialisees avec
+ * l'entite sont chargees en fetch join, les images a part (pas de fetch de collection avec limit).
+ */
+public final class ListSpecifications {
+
+    private static final int RESOLVED_STATUS_VALUE = 30;
+
+    private ListSpecifications() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Specification<Signalement> signalements(ListFilter filter, boolean nonResolus) {
+        return (root, query, cb) -> {
+            Join<Signalement, SignalementStatus> status = (Join<Signalement, SignalementStatus>) root
+                    .<Signalement, SignalementStatus>fetch("status", JoinType.LEFT);
+            Join<Signalement, Point> point = (Join<Signalement, Point>) root.<Signalement, Point>fetch("point",
+                    JoinType.LEFT);
+            root.fetch("user", JoinType.LEFT);
+
+            List<Predicate> predicates = new ArrayList<>();
+            if (nonResolus) {
+                predicates.add(cb.notEqual(status.get("valeur"), RESOLVED_STATUS_VALUE));
+            }
+            if (filter.getStatus() != null) {
+                predicates.add(cb.equal(status.get("valeur"), filter.getStatus()));
+            }
+            if (filter.getUserId() != null) {
+                predicates.add(cb.equal(root.get("user").get("id"), filter.getUserId()));
+            }
+            if (filter.getEntrepriseId() != null) {
+                Subquery<Integer> sub = query.subquery(Integer.class);
+                Root<Probleme> p = sub.from(Probleme.class);
+                sub.select(p.get("id")).where(cb.equal(p.get("signalement"), root),
+                        cb.equal(p.get("entreprise").get("id"), filter.getEntrepriseId()));
+                predicates.add(cb.exists(sub));
+            }
+            addCommon(predicates, cb, filter, root.get("id"), root.get("createdAt"), point);
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Specification<Probleme> problemes(ListFilter filter, boolean nonResolus) {
+        return (root, query, cb) -> {
+            Join<Probleme, ProblemeStatus> status = (Join<Probleme, ProblemeStatus>) root
+                    .<Probleme, ProblemeStatus>fetch("problemeStatus", JoinType.LEFT);
+            root.fetch("entreprise", JoinType.LEFT);
+            Join<Probleme, Signalement> signalement = (Join<Probleme, Signalement>) root
+                    .<Probleme, Signalement>fetch("signalement", JoinType.LEFT);
+            Join<Signalement, Point> point = (Join<Signalement, Point>) signalement
+                    .<Signalement, Point>fetch("point", JoinType.LEFT);
+            signalement.fetch("user", JoinType.LEFT);
+            signalement.fetch("status", JoinType.LEFT);
+
+            List<Predicate> predicates = new ArrayList<>();
+            if (nonResolus) {
+                predicates.add(cb.notEqual(status.get("valeur"), RESOLVED_STATUS_VALUE));
+            }
+            if (filter.getStatus() != null) {
+                predicates.add(cb.equal(status.get("valeur"), filter.getStatus()));
+            }
+            if (filter.getEntrepriseId() != null) {
+                predicates.add(cb.equal(root.get("entreprise").get("id"), filter.getEntrepriseId()));
+            }
+            if (filter.getUserId() != null) {
+                predicates.add(cb.equal(signalement.get("user").get("id"), filter.getUserId()));
+            }
+            addCommon(predicates, cb, filter, root.get("id"), signalement.get("createdAt"), point);
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    private static void addCommon(List<Predicate> predicates, CriteriaBuilder cb, ListFilter filter,
+            Path<Integer> id, Path<LocalDateTime> createdAt, Join<Signalement, Point> point) {
+        if (filter.getCursor() != null) {
+            predicates.add(cb.lessThan(id, filter.getCursor()));
+        }
+        if (filter.getFrom() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(createdAt, filter.getFrom().atStartOfDay()));
+        }
+        if (filter.getTo() != null) {
+            predicates.add(cb.lessThan(createdAt, filter.getTo().plusDays(1).atStartOfDay()));
+        }
+        if (filter.getMinX() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(point.get("x"), filter.getMinX()));
+        }
+        if (filter.getMaxX() != null) {
+            predicates.add(cb.lessThanOrEqualTo(point.get("x"), filter.getMaxX()));
+        }
+        if (filter.getMinY() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(point.get("y"), filter.getMinY()));
+        }
+        if (filter.getMaxY() != null) {
+            predicates.add(cb.lessThanOrEqualTo(point.get("y"), filter.getMaxY()));
+        }
+    }
+}
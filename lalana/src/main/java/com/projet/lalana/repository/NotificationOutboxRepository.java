@@ -0,0 +1,23 @@
+package com.projet.lalana.repository;
+
+import com.projet.lalana.model.NotificationOutbox;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface NotificationOutboxRepository extends JpaRepository<NotificationOutbox, Long> {
+
+    /**
+     * Lignes a envoyer (READY, ERROR dont la reprise est due, ou SENDING abandonnees),
+     * verrouillees pour la transaction courante.
+     * SKIP LOCKED laisse plusieurs relais se partager la table sans s'attendre.
+     */
+    @Query(value = "SELECT * FROM notification_outbox "
+            + "WHERE (status IN ('READY', 'ERROR') AND (next_attempt_at IS NULL OR next_attempt_at <= :now)) "
+            + "OR (status = 'SENDING' AND locked_at < :staleBefore) "
+            + "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<NotificationOutbox> lockBatch(@Param("now") Instant now, @Param("staleBefore") Instant staleBefore, @Param("limit") int limit);
+}
@@ -0,0 +1,13 @@
+package com.projet.lalana.repository;
+
+import com.projet.lalana.model.ProblemeDurationSketch;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ProblemeDurationSketchRepository extends JpaRepository<ProblemeDurationSketch, String> {
+
+    List<ProblemeDurationSketch> findByScopeKeyAndPeriod(String scopeKey, String period);
+
+    List<ProblemeDurationSketch> findByScopeKeyAndPeriodBetween(String scopeKey, String from, String to);
+}
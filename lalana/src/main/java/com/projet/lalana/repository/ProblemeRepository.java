@@ -3,13 +3,19 @@ package com.projet.lalana.repository;
 import com.projet.lalana.model.Probleme;
 import com.projet.lalana.model.Signalement;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface ProblemeRepository extends JpaRepository<Probleme, Integer> {
+public interface ProblemeRepository extends JpaRepository<Probleme, Integer>, JpaSpecificationExecutor<Probleme> {
 
         @Query("""
             SELECT DISTINCT p FROM Probleme p
@@ -28,6 +34,36 @@ public interface ProblemeRepository extends JpaRepository<Probleme, Integer> {
         """)
     List<Probleme> findAllWithStatusOther();
 
+    /**
+     * Problemes a pousser vers Firestore, avec toutes les associations "to-one" utiles
+     * au document (les images sont chargees a part, en une seule requete).
+     */
+    @Query("""
+        SELECT p FROM Probleme p
+        LEFT JOIN FETCH p.entreprise
+        LEFT JOIN FETCH p.problemeStatus
+        LEFT JOIN FETCH p.signalement s
+        LEFT JOIN FETCH s.user
+        LEFT JOIN FETCH s.point
+        WHERE p.problemeStatus.valeur <= :valeur AND p.firestoreSynced = false
+        """)
+    List<Probleme> findUnsyncedForPush(@Param("valeur") Integer valeur);
+
+    @Query("""
+        SELECT p FROM Probleme p
+        LEFT JOIN FETCH p.entreprise
+        LEFT JOIN FETCH p.problemeStatus
+        LEFT JOIN FETCH p.signalement s
+        LEFT JOIN FETCH s.user
+        LEFT JOIN FETCH s.point
+        WHERE p.updatedAt >= :since
+        """)
+    List<Probleme> findChangedSince(@Param("since") LocalDateTime since);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE Probleme p SET p.firestoreSynced = true WHERE p.id IN :ids")
+    int markFirestoreSynced(@Param("ids") Collection<Integer> ids);
 
 
 }
@@ -0,0 +1,11 @@
+package com.projet.lalana.repository;
+
+import com.projet.lalana.model.ProblemeStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ProblemeStatsRepository extends JpaRepository<ProblemeStats, String> {
+
+    List<ProblemeStats> findByEntrepriseIdIsNotNullOrderByEntrepriseId();
+}
@@ -1,12 +1,15 @@
 package com.projet.lalana.repository;
 
+import com.projet.lalana.model.ImageDownloadStatus;
 import com.projet.lalana.model.SignalementImage;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface SignalementImageRepository extends JpaRepository<SignalementImage, Integer> {
@@ -14,4 +17,11 @@ public interface SignalementImageRepository extends JpaRepository<SignalementIma
     @Query("SELECT i FROM SignalementImage i WHERE i.signalement.id = :signalementId")
     List<SignalementImage> findBySignalementId(@Param("signalementId") Integer signalementId);
 
+    @Query("SELECT i FROM SignalementImage i WHERE i.signalement.id IN :signalementIds")
+    List<SignalementImage> findBySignalementIdIn(@Param("signalementIds") Collection<Integer> signalementIds);
+
+    List<SignalementImage> findByDownloadStatus(ImageDownloadStatus downloadStatus);
+
+    Optional<SignalementImage> findFirstByCheminOnlineAndContentHashIsNotNull(String cheminOnline);
+
 }
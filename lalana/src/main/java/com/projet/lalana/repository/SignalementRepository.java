@@ -2,13 +2,25 @@ package com.projet.lalana.repository;
 
 import com.projet.lalana.model.Signalement;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
-public interface SignalementRepository extends JpaRepository<Signalement, Integer> {
+public interface SignalementRepository extends JpaRepository<Signalement, Integer>, JpaSpecificationExecutor<Signalement> {
 	List<Signalement> findByFirestoreSyncedFalse();
 
+	@Query("SELECT DISTINCT s FROM Signalement s LEFT JOIN FETCH s.user LEFT JOIN FETCH s.point LEFT JOIN FETCH s.status LEFT JOIN FETCH s.images WHERE s.updatedAt >= :since")
+	List<Signalement> findChangedSince(@Param("since") LocalDateTime since);
+
+	@Query("SELECT s.firestoreDocId FROM Signalement s WHERE s.firestoreDocId IN :docIds")
+	List<String> findExistingFirestoreDocIds(@Param("docIds") Collection<String> docIds);
+
 	@Query("SELECT DISTINCT s FROM Signalement s LEFT JOIN FETCH s.images WHERE s.status.valeur <= 10 AND s.firestoreSynced = false")
 	List<Signalement> findByStatusValeurLE10();
 
@@ -18,4 +30,13 @@ public interface SignalementRepository extends JpaRepository<Signalement, Intege
 	@Query("SELECT DISTINCT s FROM Signalement s LEFT JOIN FETCH s.images WHERE s.status.valeur != 30")
 	List<Signalement> findAllWithStatusOther();
 
+	/** Initialise les images d'une page de signalements deja charges, en une seule requete. */
+	@Query("SELECT DISTINCT s FROM Signalement s LEFT JOIN FETCH s.images WHERE s.id IN :ids")
+	List<Signalement> fetchImages(@Param("ids") Collection<Integer> ids);
+
+	@Modifying
+	@Transactional
+	@Query("UPDATE Signalement s SET s.firestoreSynced = true WHERE s.id IN :ids")
+	int markFirestoreSynced(@Param("ids") Collection<Integer> ids);
+
 }
@@ -0,0 +1,7 @@
+package com.projet.lalana.repository;
+
+import com.projet.lalana.model.SyncCursor;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface SyncCursorRepository extends JpaRepository<SyncCursor, String> {
+}
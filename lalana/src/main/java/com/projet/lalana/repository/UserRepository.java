@@ -3,6 +3,7 @@ package com.projet.lalana.repository;
 import com.projet.lalana.model.User;
 
 import java.util.Optional;
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -17,6 +18,11 @@ public interface UserRepository extends JpaRepository<User, Integer> {
 
     Optional<User> findByFirebaseToken(String firebaseToken);
 
+    List<User> findByFirebaseTokenIn(Collection<String> firebaseTokens);
+
+    @Query("SELECT u FROM User u WHERE u.firebaseToken IS NOT NULL AND u.firebaseToken <> ''")
+    List<User> findWithFirebaseToken();
+
     @Query("SELECT u FROM User u WHERE u.firestoreSynced = false")
     List<User> findNotSyncedUsers();
 
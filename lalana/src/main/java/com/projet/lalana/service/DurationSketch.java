@@ -0,0 +1,140 @@
+package com.projet.lalana.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Esquisse de distribution de durees (en heures), a buckets logarithmiques facon HDR :
+ * le bucket i couvre [GAMMA^i - 1, GAMMA^(i+1) - 1[, soit environ 5 % d'erreur relative
+ * sur les quantiles, avec une memoire fixe de BUCKETS compteurs quel que soit le volume.
+ * Deux esquisses se fusionnent en additionnant leurs compteurs (par periode, par entreprise...).
+ */
+public final class DurationSketch {
+
+    public static final double GAMMA = 1.1;
+    /** 128 buckets : jusqu'a ~20 ans, le dernier bucket absorbe au-dela. */
+    public static final int BUCKETS = 128;
+
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+
+    /** Classes d'affichage de l'histogramme, en heures : bornes inferieures. */
+    private static final long[] DISPLAY_BOUNDS = { 0, 1, 6, 24, 72, 168, 336, 720, 2160 };
+    private static final String[] DISPLAY_LABELS = { "< 1 h", "1-6 h", "6-24 h", "1-3 j", "3-7 j", "7-14 j",
+            "14-30 j", "30-90 j", "> 90 j" };
+
+    private final long[] counts;
+    private long count;
+
+    public DurationSketch() {
+        this.counts = new long[BUCKETS];
+    }
+
+    /**
+     * Reconstruit une esquisse persistee (tableau plus court accepte, complete par des zeros).
+     */
+    public static DurationSketch of(long[] buckets) {
+        DurationSketch sketch = new DurationSketch();
+        if (buckets != null) {
+            for (int i = 0; i < Math.min(buckets.length, BUCKETS); i++) {
+                sketch.counts[i] = buckets[i];
+                sketch.count += buckets[i];
+            }
+        }
+        return sketch;
+    }
+
+    public static int bucketOf(long hours) {
+        if (hours <= 0) {
+            return 0;
+        }
+        int bucket = (int) Math.floor(Math.log(hours + 1.0) / LOG_GAMMA);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    public static double lowerBound(int bucket) {
+        return Math.pow(GAMMA, bucket) - 1;
+    }
+
+    public static double upperBound(int bucket) {
+        return Math.pow(GAMMA, bucket + 1) - 1;
+    }
+
+    public void add(long hours) {
+        counts[bucketOf(hours)]++;
+        count++;
+    }
+
+    public void merge(DurationSketch other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(counts, BUCKETS);
+    }
+
+    /**
+     * Quantile q (0..1) en heures : milieu du bucket contenant le rang ceil(q * count).
+     * 0 si l'esquisse est vide.
+     */
+    public double quantile(double q) {
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(0.0, (lowerBound(i) + upperBound(i)) / 2);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    public Map<String, Double> percentiles() {
+        Map<String, Double> out = new LinkedHashMap<>();
+        out.put("p50", quantile(0.50));
+        out.put("p90", quantile(0.90));
+        out.put("p99", quantile(0.99));
+        return out;
+    }
+
+    /**
+     * Histogramme regroupe en classes lisibles (heures / jours). Chaque bucket de l'esquisse est
+     * range dans la classe de son milieu : les bornes de classe sont donc approchees a ~5 % pres.
+     */
+    public List<Map<String, Object>> histogram() {
+        long[] display = new long[DISPLAY_BOUNDS.length];
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            double middle = (lowerBound(i) + upperBound(i)) / 2;
+            int slot = 0;
+            while (slot + 1 < DISPLAY_BOUNDS.length && middle >= DISPLAY_BOUNDS[slot + 1]) {
+                slot++;
+            }
+            display[slot] += counts[i];
+        }
+        List<Map<String, Object>> out = new ArrayList<>(display.length);
+        for (int slot = 0; slot < display.length; slot++) {
+            Map<String, Object> bucket = new LinkedHashMap<>();
+            bucket.put("label", DISPLAY_LABELS[slot]);
+            bucket.put("fromHours", DISPLAY_BOUNDS[slot]);
+            bucket.put("toHours", slot + 1 < DISPLAY_BOUNDS.length ? DISPLAY_BOUNDS[slot + 1] : null);
+            bucket.put("count", display[slot]);
+            out.add(bucket);
+        }
+        return out;
+    }
+}
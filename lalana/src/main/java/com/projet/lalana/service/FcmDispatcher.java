@@ -0,0 +1,185 @@
+package com.projet.lalana.service;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.MessagingErrorCode;
+import com.google.firebase.messaging.SendResponse;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * File d'envoi FCM : les messages sont mis en attente puis envoyés par lots de 500 au plus
+ * via FirebaseMessaging.sendEach, au lieu d'un appel send() synchrone par notification.
+ *
+ * Chaque message soumis reçoit un CompletableFuture complété avec le messageId, ou en erreur avec
+ * la FirebaseMessagingException propre à ce message. Un lot part dès qu'il est plein, sinon au plus
+ * tard après fcm.dispatch.flush-interval-ms.
+ *
+ * Sur QUOTA_EXCEEDED ou UNAVAILABLE, le débit global est réduit : les envois sont suspendus
+ * (pause doublée à chaque lot refusé, plafonnée) et la taille des lots est divisée par deux ;
+ * elle remonte progressivement dès que les lots repassent sans erreur de quota.
+ */
+@Service
+@RequiredArgsConstructor
+public class FcmDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(FcmDispatcher.class);
+
+    /** Nombre maximum de messages acceptés par sendEach. */
+    public static final int MAX_BATCH_SIZE = 500;
+
+    @Qualifier("fcmDispatchExecutor")
+    private final ScheduledExecutorService fcmDispatchExecutor;
+
+    @Value("${fcm.dispatch.batch-size:500}")
+    private int batchSize;
+
+    @Value("${fcm.dispatch.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${fcm.dispatch.throttle.initial-ms:1000}")
+    private long throttleInitialMs;
+
+    @Value("${fcm.dispatch.throttle.max-ms:60000}")
+    private long throttleMaxMs;
+
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // Etat du throttling, lu et modifié uniquement sur le thread fcmDispatchExecutor
+    private int currentBatchSize;
+    private long throttleMs;
+    private volatile long pausedUntil;
+
+    private record Pending(Message message, CompletableFuture<String> result) {
+    }
+
+    @PostConstruct
+    void init() {
+        batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        currentBatchSize = batchSize;
+    }
+
+    /**
+     * Met un message en file d'envoi.
+     */
+    public CompletableFuture<String> submit(Message message) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        queue.add(new Pending(message, result));
+        if (queued.incrementAndGet() >= batchSize && System.currentTimeMillis() >= pausedUntil) {
+            fcmDispatchExecutor.execute(this::flush);
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            fcmDispatchExecutor.schedule(this::flush, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    public int getQueueSize() {
+        return queued.get();
+    }
+
+    public boolean isThrottled() {
+        return System.currentTimeMillis() < pausedUntil;
+    }
+
+    /**
+     * Vide la file par lots de currentBatchSize, sauf pendant une pause de throttling. Appelé sur le thread unique fcmDispatchExecutor,
+     * donc jamais en parallèle avec lui-même.
+     */
+    void flush() {
+        flushScheduled.set(false);
+        while (!queue.isEmpty()) {
+            long wait = pausedUntil - System.currentTimeMillis();
+            if (wait > 0) {
+                if (flushScheduled.compareAndSet(false, true)) {
+                    fcmDispatchExecutor.schedule(this::flush, wait, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+            List<Pending> batch = new ArrayList<>(currentBatchSize);
+            Pending next;
+            while (batch.size() < currentBatchSize && (next = queue.poll()) != null) {
+                queued.decrementAndGet();
+                batch.add(next);
+            }
+            if (!batch.isEmpty()) {
+                sendBatch(batch);
+            }
+        }
+    }
+
+    private void sendBatch(List<Pending> batch) {
+        if (FirebaseApp.getApps().isEmpty()) {
+            IllegalStateException error = new IllegalStateException("Firebase n'est pas initialisé");
+            batch.forEach(p -> p.result().completeExceptionally(error));
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            List<Message> messages = batch.stream().map(Pending::message).toList();
+            BatchResponse response = FirebaseMessaging.getInstance().sendEach(messages);
+            List<SendResponse> responses = response.getResponses();
+            boolean overloaded = false;
+            for (int i = 0; i < batch.size(); i++) {
+                SendResponse sent = responses.get(i);
+                if (sent.isSuccessful()) {
+                    batch.get(i).result().complete(sent.getMessageId());
+                } else {
+                    overloaded |= isOverloaded(sent.getException());
+                    batch.get(i).result().completeExceptionally(sent.getException());
+                }
+            }
+            adjustRate(overloaded);
+            logger.info("[FCM-DISPATCH] Lot de {} message(s) : {} envoyé(s), {} échec(s) en {} ms", batch.size(),
+                    response.getSuccessCount(), response.getFailureCount(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("[FCM-DISPATCH] Échec de l'envoi d'un lot de {} message(s): {}", batch.size(),
+                    e.getMessage());
+            batch.forEach(p -> p.result().completeExceptionally(e));
+            adjustRate(true);
+        }
+    }
+
+    private static boolean isOverloaded(FirebaseMessagingException e) {
+        return e != null && (e.getMessagingErrorCode() == MessagingErrorCode.QUOTA_EXCEEDED
+                || e.getMessagingErrorCode() == MessagingErrorCode.UNAVAILABLE);
+    }
+
+    /**
+     * Ralentit après un lot refusé pour quota ou indisponibilité, puis réaccélère lot après lot.
+     */
+    void adjustRate(boolean overloaded) {
+        if (overloaded) {
+            throttleMs = throttleMs == 0 ? throttleInitialMs : Math.min(throttleMs * 2, throttleMaxMs);
+            currentBatchSize = Math.max(1, currentBatchSize / 2);
+            pausedUntil = System.currentTimeMillis() + throttleMs;
+            logger.warn("[FCM-DISPATCH] Quota ou service FCM saturé : pause de {} ms, lots de {} message(s)",
+                    throttleMs, currentBatchSize);
+        } else if (currentBatchSize < batchSize) {
+            currentBatchSize = Math.min(batchSize, currentBatchSize * 2);
+            if (currentBatchSize == batchSize) {
+                throttleMs = 0;
+            }
+        } else {
+            throttleMs = 0;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.google.cloud.firestore.DocumentSnapshot;
 import com.google.cloud.firestore.Firestore;
 import com.google.firebase.cloud.FirestoreClient;
 import com.google.firebase.messaging.*;
+import com.projet.lalana.model.NotificationOutbox;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,13 +12,17 @@ import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 
 /**
  * Service d'envoi direct de notifications FCM
  * 
- * Envoie les notifications push directement via Firebase Cloud Messaging
- * au moment de la synchronisation, sans passer par Cloud Functions.
+ * Envoie les notifications push directement via Firebase Cloud Messaging,
+ * sans passer par Cloud Functions. Seul NotificationRelayService envoie, via
+ * {@link #deliver} : les lignes de notification_outbox sont confiées au
+ * {@link FcmDispatcher} qui les envoie par lots (sendEach).
  */
 @Service
 @RequiredArgsConstructor
@@ -25,6 +30,9 @@ public class FcmNotificationService {
 
         private static final Logger logger = LoggerFactory.getLogger(FcmNotificationService.class);
 
+        private final FcmTokenCache fcmTokenCache;
+        private final FcmDispatcher fcmDispatcher;
+
         /**
          * Vérifie si le document userTokens/{firebaseUid} existe dans Firestore.
          * Si non, le crée avec les infos de base (sans fcmToken car il sera rempli par
@@ -41,6 +49,11 @@ public class FcmNotificationService {
                         return;
                 }
 
+                // Un token en cache implique que userTokens/{uid} existe et est rempli
+                if (fcmTokenCache.hasToken(firebaseUid)) {
+                        return;
+                }
+
                 try {
                         Firestore db = FirestoreClient.getFirestore();
 
@@ -82,6 +95,7 @@ public class FcmNotificationService {
                                                 .document(firebaseUid)
                                                 .set(data)
                                                 .get();
+                                fcmTokenCache.put(firebaseUid, existingFcmToken);
 
                                 if (existingFcmToken != null) {
                                         System.out.println("✅ [FCM] Document userTokens/" + firebaseUid
@@ -111,6 +125,7 @@ public class FcmNotificationService {
                                                                 .document(firebaseUid)
                                                                 .update(update)
                                                                 .get();
+                                                fcmTokenCache.put(firebaseUid, existingFcmToken);
 
                                                 System.out.println("✅ [FCM] fcmToken rempli dans userTokens/"
                                                                 + firebaseUid);
@@ -119,6 +134,7 @@ public class FcmNotificationService {
                                                                 + " existe mais fcmToken vide (aucun token trouvé dans users/ non plus)");
                                         }
                                 } else {
+                                        fcmTokenCache.put(firebaseUid, currentToken);
                                         System.out.println("✅ [FCM] userTokens/" + firebaseUid
                                                         + " OK (token FCM présent: "
                                                         + currentToken.substring(0, Math.min(20, currentToken.length()))
@@ -137,6 +153,7 @@ public class FcmNotificationService {
          * IMPORTANT: Le token FCM (pour notifications push) est différent de l'UID
          * Firebase (identifiant user)
          * Le token FCM est stocké dans Firestore: userTokens/{userId}/fcmToken
+         * Le {@link FcmTokenCache} est consulté d'abord ; Firestore n'est lu qu'en cas d'absence.
          * 
          * @param userId Firebase UID de l'utilisateur
          * @return Token FCM ou null si non trouvé
@@ -149,6 +166,11 @@ public class FcmNotificationService {
                         return null;
                 }
 
+                String cached = fcmTokenCache.get(userId);
+                if (cached != null) {
+                        return cached.isEmpty() ? null : cached;
+                }
+
                 try {
                         Firestore db = FirestoreClient.getFirestore();
 
@@ -163,6 +185,7 @@ public class FcmNotificationService {
                                 System.out.println("✅ [FCM] Token FCM trouvé dans userTokens: " +
                                                 (token != null ? token.substring(0, Math.min(20, token.length()))
                                                                 + "..." : "null"));
+                                fcmTokenCache.put(userId, token);
                                 return token;
                         }
 
@@ -177,10 +200,12 @@ public class FcmNotificationService {
                                 System.out.println("✅ [FCM] Token FCM trouvé dans users: " +
                                                 (token != null ? token.substring(0, Math.min(20, token.length()))
                                                                 + "..." : "null"));
+                                fcmTokenCache.put(userId, token);
                                 return token;
                         }
 
                         System.out.println("⚠️ [FCM] Aucun token FCM trouvé dans Firestore pour userId=" + userId);
+                        fcmTokenCache.put(userId, "");
                         return null;
 
                 } catch (InterruptedException | ExecutionException e) {
@@ -191,407 +216,95 @@ public class FcmNotificationService {
         }
 
         /**
-         * Envoie une notification de création de signalement
-         * 
-         * @param signalementId ID du signalement créé
-         * @param userId        ID de l'utilisateur
-         * @param fcmToken      Token FCM de l'appareil
-         * @param description   Description du signalement
-         * @return true si envoyé avec succès, false sinon
+         * Envoie une ligne de notification_outbox et renvoie le résultat réel de l'envoi,
+         * utilisé par NotificationRelayService pour marquer la ligne.
+         * Sans token FCM, la notification est sauvegardée dans Firestore (fallback).
          */
-        public boolean sendSignalementCreatedNotification(
-                        Integer signalementId,
-                        String userId,
-                        String fcmToken,
-                        String description) {
-
-                System.out.println("🚀 [FCM] Tentative d'envoi notification SIGNALEMENT_CREATED");
-                System.out.println("   ├─ signalementId: " + signalementId);
-                System.out.println("   ├─ userId (Firebase UID): " + userId);
-                System.out.println("   └─ fcmToken fourni: "
-                                + (fcmToken != null ? fcmToken.substring(0, Math.min(20, fcmToken.length())) + "..."
-                                                : "NULL"));
-
-                // Si le token n'est pas fourni ou semble être un UID Firebase (court),
-                // récupérer depuis Firestore
-                if (fcmToken == null || fcmToken.isEmpty() || fcmToken.length() < 50) {
-                        System.out.println(
-                                        "⚠️ [FCM] Token semble invalide (probablement un Firebase UID au lieu d'un token FCM)");
-                        System.out.println("🔄 [FCM] Tentative de récupération du vrai token FCM depuis Firestore...");
-                        fcmToken = getFcmTokenFromFirestore(userId);
-
-                        if (fcmToken == null || fcmToken.isEmpty()) {
-                                System.out.println(
-                                                "⚠️ [FCM] Pas de token FCM disponible, sauvegarde directe dans Firestore (fallback)");
-                                return saveNotificationToFirestore(userId,
-                                                "Nouveau signalement enregistré",
-                                                "Votre signalement a été enregistré avec succès",
-                                                "SIGNALEMENT", String.valueOf(signalementId), "CREATED", description);
-                        }
+        public CompletableFuture<String> deliver(NotificationOutbox notification) {
+                String firebaseUid = notification.getFirebaseUid();
+                String entityId = String.valueOf(notification.getEntityId());
+                String fcmToken = getFcmTokenFromFirestore(firebaseUid);
+                if (fcmToken == null || fcmToken.isEmpty()) {
+                        boolean saved = saveNotificationToFirestore(firebaseUid, notification.getTitle(),
+                                        notification.getMessage(), notification.getType(), entityId,
+                                        notification.getAction(), notification.getDescription());
+                        return saved ? CompletableFuture.completedFuture("firestore")
+                                        : CompletableFuture.failedFuture(new IllegalStateException(
+                                                        "Ni token FCM ni sauvegarde Firestore pour " + firebaseUid));
                 }
 
-                try {
-                        System.out.println("📝 [FCM] Construction du message FCM pour signalementId=" + signalementId);
-                        // Construction du message FCM
-                        Map<String, String> data = new HashMap<>();
-                        data.put("type", "SIGNALEMENT");
-                        data.put("entityId", String.valueOf(signalementId));
-                        data.put("action", "CREATED");
-                        data.put("userId", userId);
-                        if (description != null) {
-                                data.put("description", description);
-                        }
-
-                        Message message = Message.builder()
-                                        .setToken(fcmToken)
-                                        .setNotification(Notification.builder()
-                                                        .setTitle("Nouveau signalement enregistré")
-                                                        .setBody("Votre signalement a été enregistré avec succès")
-                                                        .build())
-                                        .putAllData(data)
-                                        .setAndroidConfig(AndroidConfig.builder()
-                                                        .setPriority(AndroidConfig.Priority.HIGH)
-                                                        .setNotification(AndroidNotification.builder()
-                                                                        .setChannelId("signalement_updates")
-                                                                        .setIcon("ic_notification")
-                                                                        .setColor("#2196F3")
-                                                                        .setSound("default")
-                                                                        .build())
-                                                        .build())
-                                        .setApnsConfig(ApnsConfig.builder()
-                                                        .setAps(Aps.builder()
-                                                                        .setBadge(1)
-                                                                        .setSound("default")
-                                                                        .build())
-                                                        .putHeader("apns-priority", "10")
-                                                        .build())
-                                        .build();
-
-                        // Envoi via FCM
-                        System.out.println("📤 [FCM] Envoi du message FCM vers Firebase...");
-                        String response = FirebaseMessaging.getInstance().send(message);
-                        System.out.println("✅ [FCM] Notification SIGNALEMENT_CREATED envoyée avec succès!");
-                        System.out.println("   ├─ signalementId: " + signalementId);
-                        System.out.println("   ├─ userId: " + userId);
-                        System.out.println("   ├─ FCM MessageId: " + response);
-                        System.out.println("   └─ Titre: 'Nouveau signalement enregistré'");
-
-                        return true;
-
-                } catch (FirebaseMessagingException e) {
-                        System.out.println(
-                                        "❌ [FCM] Erreur FirebaseMessagingException lors de SIGNALEMENT_CREATED: signalementId="
-                                                        + signalementId);
-                        handleFcmError(e, signalementId, userId, fcmToken);
-                        return false;
-                } catch (Exception e) {
-                        System.out.println("❌ [FCM] Erreur inattendue lors de l'envoi de notification: signalementId="
-                                        + signalementId + ", userId=" + userId);
-                        e.printStackTrace();
-                        return false;
+                Map<String, String> data = new HashMap<>();
+                data.put("type", notification.getType());
+                data.put("entityId", entityId);
+                data.put("action", notification.getAction());
+                data.put("userId", notification.getUserId() != null ? notification.getUserId() : firebaseUid);
+                if (notification.getDescription() != null) {
+                        data.put("description", notification.getDescription());
                 }
-        }
-
-        /**
-         * Envoie une notification de changement de statut de signalement
-         * 
-         * @param signalementId ID du signalement
-         * @param userId        ID de l'utilisateur
-         * @param fcmToken      Token FCM
-         * @param oldStatus     Ancien statut
-         * @param newStatus     Nouveau statut
-         * @return true si envoyé avec succès
-         */
-        public boolean sendSignalementStatusChangedNotification(
-                        Integer signalementId,
-                        String userId,
-                        String fcmToken,
-                        String oldStatus,
-                        String newStatus) {
-
-                System.out.println("🚀 [FCM] Tentative d'envoi notification STATUS_CHANGED");
-                System.out.println("   ├─ signalementId: " + signalementId);
-                System.out.println("   ├─ userId (Firebase UID): " + userId);
-                System.out.println("   ├─ Changement: '" + oldStatus + "' -> '" + newStatus + "'");
-                System.out.println("   └─ fcmToken fourni: "
-                                + (fcmToken != null ? fcmToken.substring(0, Math.min(20, fcmToken.length())) + "..."
-                                                : "NULL"));
-
-                // Si le token n'est pas fourni ou semble être un UID Firebase (court),
-                // récupérer depuis Firestore
-                if (fcmToken == null || fcmToken.isEmpty() || fcmToken.length() < 50) {
-                        System.out.println(
-                                        "⚠️ [FCM] Token semble invalide (probablement un Firebase UID au lieu d'un token FCM)");
-                        System.out.println("🔄 [FCM] Tentative de récupération du vrai token FCM depuis Firestore...");
-                        fcmToken = getFcmTokenFromFirestore(userId);
-
-                        if (fcmToken == null || fcmToken.isEmpty()) {
-                                System.out.println(
-                                                "⚠️ [FCM] Pas de token FCM disponible, sauvegarde directe dans Firestore (fallback)");
-                                String body = String.format("Le statut est passé de \"%s\" à \"%s\"", oldStatus,
-                                                newStatus);
-                                return saveNotificationToFirestore(userId,
-                                                "Mise à jour de votre signalement", body,
-                                                "SIGNALEMENT", String.valueOf(signalementId), "STATUS_CHANGED", null);
-                        }
+                if (notification.getOldStatus() != null) {
+                        data.put("oldStatus", notification.getOldStatus());
                 }
-
-                try {
-                        System.out.println("📝 [FCM] Construction du message FCM pour changement de statut");
-                        Map<String, String> data = new HashMap<>();
-                        data.put("type", "SIGNALEMENT");
-                        data.put("entityId", String.valueOf(signalementId));
-                        data.put("action", "STATUS_CHANGED");
-                        data.put("userId", userId);
-                        data.put("oldStatus", oldStatus);
-                        data.put("newStatus", newStatus);
-
-                        String notificationBody = String.format("Le statut est passé de \"%s\" à \"%s\"",
-                                        oldStatus, newStatus);
-
-                        Message message = Message.builder()
-                                        .setToken(fcmToken)
-                                        .setNotification(Notification.builder()
-                                                        .setTitle("Mise à jour de votre signalement")
-                                                        .setBody(notificationBody)
-                                                        .build())
-                                        .putAllData(data)
-                                        .setAndroidConfig(AndroidConfig.builder()
-                                                        .setPriority(AndroidConfig.Priority.HIGH)
-                                                        .setNotification(AndroidNotification.builder()
-                                                                        .setChannelId("signalement_status")
-                                                                        .setIcon("ic_notification")
-                                                                        .setColor("#FF9800")
-                                                                        .setSound("default")
-                                                                        .build())
-                                                        .build())
-                                        .setApnsConfig(ApnsConfig.builder()
-                                                        .setAps(Aps.builder()
-                                                                        .setBadge(1)
-                                                                        .setSound("default")
-                                                                        .build())
-                                                        .putHeader("apns-priority", "10")
-                                                        .build())
-                                        .build();
-
-                        System.out.println("📤 [FCM] Envoi du message FCM vers Firebase...");
-                        String response = FirebaseMessaging.getInstance().send(message);
-                        System.out.println("✅ [FCM] Notification STATUS_CHANGED envoyée avec succès!");
-                        System.out.println("   ├─ signalementId: " + signalementId);
-                        System.out.println("   ├─ userId: " + userId);
-                        System.out.println("   ├─ FCM MessageId: " + response);
-                        System.out.println("   └─ Changement: '" + oldStatus + "' -> '" + newStatus + "'");
-
-                        return true;
-
-                } catch (FirebaseMessagingException e) {
-                        System.out.println(
-                                        "❌ [FCM] Erreur FirebaseMessagingException lors du STATUS_CHANGED: signalementId="
-                                                        + signalementId);
-                        handleFcmError(e, signalementId, userId, fcmToken);
-                        return false;
-                } catch (Exception e) {
-                        System.out.println("❌ [FCM] Erreur inattendue lors de l'envoi STATUS_CHANGED: signalementId="
-                                        + signalementId + ", userId=" + userId);
-                        e.printStackTrace();
-                        return false;
+                if (notification.getNewStatus() != null) {
+                        data.put("newStatus", notification.getNewStatus());
                 }
-        }
 
-        /**
-         * Envoie une notification de résolution de signalement
-         */
-        public boolean sendSignalementResolvedNotification(
-                        Integer signalementId,
-                        String userId,
-                        String fcmToken) {
-
-                System.out.println("🚀 [FCM] Tentative d'envoi notification SIGNALEMENT_RESOLVED");
-                System.out.println("   ├─ signalementId: " + signalementId);
-                System.out.println("   ├─ userId (Firebase UID): " + userId);
-                System.out.println("   └─ fcmToken fourni: "
-                                + (fcmToken != null ? fcmToken.substring(0, Math.min(20, fcmToken.length())) + "..."
-                                                : "NULL"));
-
-                // Si le token n'est pas fourni ou semble être un UID Firebase (court),
-                // récupérer depuis Firestore
-                if (fcmToken == null || fcmToken.isEmpty() || fcmToken.length() < 50) {
-                        System.out.println(
-                                        "⚠️ [FCM] Token semble invalide (probablement un Firebase UID au lieu d'un token FCM)");
-                        System.out.println("🔄 [FCM] Tentative de récupération du vrai token FCM depuis Firestore...");
-                        fcmToken = getFcmTokenFromFirestore(userId);
-
-                        if (fcmToken == null || fcmToken.isEmpty()) {
-                                System.out.println(
-                                                "⚠️ [FCM] Pas de token FCM disponible, sauvegarde directe dans Firestore (fallback)");
-                                return saveNotificationToFirestore(userId,
-                                                "Signalement traité",
-                                                "Votre signalement a été traité",
-                                                "SIGNALEMENT", String.valueOf(signalementId), "RESOLVED", null);
+                boolean probleme = "PROBLEME".equals(notification.getType());
+                String channelId = probleme ? "probleme_updates"
+                                : "STATUS_CHANGED".equals(notification.getAction()) ? "signalement_status"
+                                                : "signalement_updates";
+                String color = "CREATED".equals(notification.getAction()) ? "#2196F3"
+                                : "STATUS_CHANGED".equals(notification.getAction()) ? "#FF9800" : "#4CAF50";
+
+                Message message = Message.builder()
+                                .setToken(fcmToken)
+                                .setNotification(Notification.builder()
+                                                .setTitle(notification.getTitle())
+                                                .setBody(notification.getMessage())
+                                                .build())
+                                .putAllData(data)
+                                .setAndroidConfig(AndroidConfig.builder()
+                                                .setPriority(AndroidConfig.Priority.HIGH)
+                                                .setNotification(AndroidNotification.builder()
+                                                                .setChannelId(channelId)
+                                                                .setIcon("ic_notification")
+                                                                .setColor(color)
+                                                                .setSound("default")
+                                                                .build())
+                                                .build())
+                                .setApnsConfig(ApnsConfig.builder()
+                                                .setAps(Aps.builder()
+                                                                .setBadge(1)
+                                                                .setSound("default")
+                                                                .build())
+                                                .putHeader("apns-priority", "10")
+                                                .build())
+                                .build();
+
+                String label = notification.getType() + "_" + notification.getAction();
+                return fcmDispatcher.submit(message).whenComplete((messageId, error) -> {
+                        if (error != null) {
+                                onDispatchFailure(error, label, notification.getEntityId(),
+                                                notification.getUserId(), fcmToken);
                         }
-                }
-
-                try {
-                        System.out.println("📝 [FCM] Construction du message FCM pour signalement résolu");
-                        Map<String, String> data = new HashMap<>();
-                        data.put("type", "SIGNALEMENT");
-                        data.put("entityId", String.valueOf(signalementId));
-                        data.put("action", "RESOLVED");
-                        data.put("userId", userId);
-
-                        Message message = Message.builder()
-                                        .setToken(fcmToken)
-                                        .setNotification(Notification.builder()
-                                                        .setTitle("Signalement traité")
-                                                        .setBody("Votre signalement a été traité")
-                                                        .build())
-                                        .putAllData(data)
-                                        .setAndroidConfig(AndroidConfig.builder()
-                                                        .setPriority(AndroidConfig.Priority.HIGH)
-                                                        .setNotification(AndroidNotification.builder()
-                                                                        .setChannelId("signalement_updates")
-                                                                        .setIcon("ic_notification")
-                                                                        .setColor("#4CAF50")
-                                                                        .setSound("default")
-                                                                        .build())
-                                                        .build())
-                                        .setApnsConfig(ApnsConfig.builder()
-                                                        .setAps(Aps.builder()
-                                                                        .setBadge(1)
-                                                                        .setSound("default")
-                                                                        .build())
-                                                        .putHeader("apns-priority", "10")
-                                                        .build())
-                                        .build();
-
-                        System.out.println("📤 [FCM] Envoi du message FCM vers Firebase...");
-                        String response = FirebaseMessaging.getInstance().send(message);
-                        System.out.println("✅ [FCM] Notification SIGNALEMENT_RESOLVED envoyée avec succès!");
-                        System.out.println("   ├─ signalementId: " + signalementId);
-                        System.out.println("   ├─ userId: " + userId);
-                        System.out.println("   └─ FCM MessageId: " + response);
-
-                        return true;
-
-                } catch (FirebaseMessagingException e) {
-                        System.out.println(
-                                        "❌ [FCM] Erreur FirebaseMessagingException lors de SIGNALEMENT_RESOLVED: signalementId="
-                                                        + signalementId);
-                        handleFcmError(e, signalementId, userId, fcmToken);
-                        e.printStackTrace();
-                        return false;
-                } catch (Exception e) {
-                        System.out.println(
-                                        "❌ [FCM] Erreur inattendue lors de l'envoi SIGNALEMENT_RESOLVED: signalementId="
-                                                        + signalementId + ", userId=" + userId);
-                        e.printStackTrace();
-                        return false;
-                }
+                });
         }
 
         /**
-         * Envoie une notification de résolution de problème
-         * 
-         * @param problemeId  ID du problème résolu
-         * @param userId      ID de l'utilisateur
-         * @param fcmToken    Token FCM
-         * @param description Description du problème
-         * @return true si envoyé avec succès
+         * Échec d'un message envoyé par le dispatcher : les erreurs FCM propres au message
+         * passent par handleFcmError, les autres (lot entier en échec) sont seulement tracées.
          */
-        public boolean sendProblemeResolvedNotification(
-                        Integer problemeId,
-                        String userId,
-                        String fcmToken,
-                        String description) {
-
-                System.out.println("🚀 [FCM] Tentative d'envoi notification PROBLEME_RESOLVED");
-                System.out.println("   ├─ problemeId: " + problemeId);
-                System.out.println("   ├─ userId (Firebase UID): " + userId);
-                System.out.println("   └─ fcmToken fourni: "
-                                + (fcmToken != null ? fcmToken.substring(0, Math.min(20, fcmToken.length())) + "..."
-                                                : "NULL"));
-
-                // Si le token n'est pas fourni ou semble être un UID Firebase (court),
-                // récupérer depuis Firestore
-                if (fcmToken == null || fcmToken.isEmpty() || fcmToken.length() < 50) {
-                        System.out.println(
-                                        "⚠️ [FCM] Token semble invalide (probablement un Firebase UID au lieu d'un token FCM)");
-                        System.out.println("🔄 [FCM] Tentative de récupération du vrai token FCM depuis Firestore...");
-                        fcmToken = getFcmTokenFromFirestore(userId);
-
-                        if (fcmToken == null || fcmToken.isEmpty()) {
-                                System.out.println(
-                                                "⚠️ [FCM] Pas de token FCM disponible, sauvegarde directe dans Firestore (fallback)");
-                                return saveNotificationToFirestore(userId,
-                                                "Problème résolu",
-                                                "Le problème que vous avez signalé a été résolu",
-                                                "PROBLEME", String.valueOf(problemeId), "RESOLVED", description);
-                        }
-                }
-
-                try {
-                        System.out.println("📝 [FCM] Construction du message FCM pour problème résolu");
-                        Map<String, String> data = new HashMap<>();
-                        data.put("type", "PROBLEME");
-                        data.put("entityId", String.valueOf(problemeId));
-                        data.put("action", "RESOLVED");
-                        data.put("userId", userId);
-                        if (description != null) {
-                                data.put("description", description);
-                        }
-
-                        Message message = Message.builder()
-                                        .setToken(fcmToken)
-                                        .setNotification(Notification.builder()
-                                                        .setTitle("Problème résolu")
-                                                        .setBody("Le problème que vous avez signalé a été résolu")
-                                                        .build())
-                                        .putAllData(data)
-                                        .setAndroidConfig(AndroidConfig.builder()
-                                                        .setPriority(AndroidConfig.Priority.HIGH)
-                                                        .setNotification(AndroidNotification.builder()
-                                                                        .setChannelId("probleme_updates")
-                                                                        .setIcon("ic_notification")
-                                                                        .setColor("#4CAF50")
-                                                                        .setSound("default")
-                                                                        .build())
-                                                        .build())
-                                        .setApnsConfig(ApnsConfig.builder()
-                                                        .setAps(Aps.builder()
-                                                                        .setBadge(1)
-                                                                        .setSound("default")
-                                                                        .build())
-                                                        .putHeader("apns-priority", "10")
-                                                        .build())
-                                        .build();
-
-                        System.out.println("📤 [FCM] Envoi du message FCM vers Firebase...");
-                        String response = FirebaseMessaging.getInstance().send(message);
-                        System.out.println("✅ [FCM] Notification PROBLEME_RESOLVED envoyée avec succès!");
-                        System.out.println("   ├─ problemeId: " + problemeId);
-                        System.out.println("   ├─ userId: " + userId);
-                        System.out.println("   ├─ FCM MessageId: " + response);
-                        System.out.println(
-                                        "   └─ Description: "
-                                                        + (description != null
-                                                                        ? description.substring(0,
-                                                                                        Math.min(50, description
-                                                                                                        .length()))
-                                                                        : "N/A"));
-
-                        return true;
-
-                } catch (FirebaseMessagingException e) {
-                        System.out.println(
-                                        "❌ [FCM] Erreur FirebaseMessagingException lors du PROBLEME_RESOLVED: problemeId="
-                                                        + problemeId);
-                        handleFcmError(e, problemeId, userId, fcmToken);
-                        return false;
-                } catch (Exception e) {
-                        System.out.println("❌ [FCM] Erreur inattendue lors de l'envoi PROBLEME_RESOLVED: problemeId="
-                                        + problemeId + ", userId=" + userId);
-                        e.printStackTrace();
-                        return false;
+        private void onDispatchFailure(Throwable error, String label, Integer entityId, String userId,
+                        String fcmToken) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause()
+                                : error;
+                if (cause instanceof FirebaseMessagingException fme) {
+                        System.out.println("❌ [FCM] Erreur FirebaseMessagingException lors de " + label + ": id="
+                                        + entityId);
+                        handleFcmError(fme, entityId, userId, fcmToken);
+                } else {
+                        System.out.println("❌ [FCM] Erreur inattendue lors de l'envoi " + label + ": id=" + entityId
+                                        + ", userId=" + userId + ", message=" + cause.getMessage());
                 }
         }
 
@@ -613,9 +326,11 @@ public class FcmNotificationService {
                         case INVALID_ARGUMENT:
                                 System.out.println("⚠️ Token FCM invalide ou expiré pour userId=" + userId + ", token="
                                                 + fcmToken);
+                                fcmTokenCache.invalidateToken(fcmToken);
                                 break;
 
                         case QUOTA_EXCEEDED:
+                                // Le FcmDispatcher ralentit l'envoi ; les lignes de l'outbox sont retentées
                                 System.out.println("❌ Quota FCM dépassé pour signalementId=" + signalementId);
                                 break;
 
@@ -0,0 +1,172 @@
+package com.projet.lalana.service;
+
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.cloud.FirestoreClient;
+import com.projet.lalana.model.User;
+import com.projet.lalana.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache en memoire des tokens FCM, indexe par Firebase UID.
+ *
+ * Borne (fcm.token-cache.max-size) et a expiration (fcm.token-cache.ttl-minutes). Il est amorce au
+ * demarrage depuis users.fcm_token, tenu a jour par un snapshot listener sur userTokens et purge des
+ * tokens rejetes par FCM (UNREGISTERED / INVALID_ARGUMENT). Une valeur vide memorise qu'un
+ * utilisateur n'a pas de token, pour ne pas relire Firestore a chaque notification.
+ */
+@Service
+@RequiredArgsConstructor
+public class FcmTokenCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(FcmTokenCache.class);
+    private static final long MAX_RECONNECT_DELAY_MS = 60_000;
+
+    private final UserRepository userRepository;
+
+    @Value("${fcm.token-cache.max-size:50000}")
+    private long maxSize;
+
+    @Value("${fcm.token-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    @Value("${fcm.token-cache.listener:true}")
+    private boolean listenerEnabled;
+
+    private volatile Cache<String, String> cache;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new CustomizableThreadFactory("fcm-token-listener-"));
+    private volatile ListenerRegistration registration;
+    private volatile long reconnectDelayMs = 1000;
+    private volatile boolean stopped;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        int seeded = 0;
+        for (User user : userRepository.findWithFirebaseToken()) {
+            if (user.getFcmToken() != null && !user.getFcmToken().isEmpty()) {
+                cache().put(user.getFirebaseToken(), user.getFcmToken());
+                seeded++;
+            }
+        }
+        logger.info("[FCM-CACHE] {} token(s) chargé(s) depuis la base", seeded);
+        if (listenerEnabled && !FirebaseApp.getApps().isEmpty()) {
+            register();
+        }
+    }
+
+    /**
+     * Token en cache : null si inconnu, chaine vide si l'utilisateur n'a pas de token.
+     */
+    public String get(String firebaseUid) {
+        return firebaseUid == null ? null : cache().getIfPresent(firebaseUid);
+    }
+
+    public boolean hasToken(String firebaseUid) {
+        String token = get(firebaseUid);
+        return token != null && !token.isEmpty();
+    }
+
+    public void put(String firebaseUid, String fcmToken) {
+        if (firebaseUid != null && !firebaseUid.isEmpty()) {
+            cache().put(firebaseUid, fcmToken != null ? fcmToken : "");
+        }
+    }
+
+    /**
+     * Retire un token rejete par FCM, quel que soit l'utilisateur qui le portait.
+     */
+    public void invalidateToken(String fcmToken) {
+        if (fcmToken != null && !fcmToken.isEmpty()) {
+            cache().asMap().values().removeIf(fcmToken::equals);
+        }
+    }
+
+    private Cache<String, String> cache() {
+        Cache<String, String> c = cache;
+        if (c == null) {
+            synchronized (this) {
+                if (cache == null) {
+                    cache = CacheBuilder.newBuilder()
+                            .maximumSize(maxSize)
+                            .expireAfterWrite(Duration.ofMinutes(ttlMinutes))
+                            .build();
+                }
+                c = cache;
+            }
+        }
+        return c;
+    }
+
+    private void register() {
+        if (stopped) {
+            return;
+        }
+        try {
+            registration = FirestoreClient.getFirestore().collection("userTokens")
+                    .addSnapshotListener(scheduler, (snapshot, error) -> {
+                        if (error != null) {
+                            logger.error("[FCM-CACHE] Erreur du flux userTokens: {}", error.getMessage());
+                            scheduleReconnect();
+                            return;
+                        }
+                        reconnectDelayMs = 1000;
+                        if (snapshot == null) {
+                            return;
+                        }
+                        for (DocumentChange change : snapshot.getDocumentChanges()) {
+                            String uid = change.getDocument().getId();
+                            if (change.getType() == DocumentChange.Type.REMOVED) {
+                                cache().invalidate(uid);
+                            } else {
+                                put(uid, change.getDocument().getString("fcmToken"));
+                            }
+                        }
+                    });
+            logger.info("[FCM-CACHE] Écoute de userTokens démarrée");
+        } catch (Exception e) {
+            logger.error("[FCM-CACHE] Impossible d'écouter userTokens: {}", e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    private void scheduleReconnect() {
+        ListenerRegistration current = registration;
+        registration = null;
+        if (current != null) {
+            current.remove();
+        }
+        if (stopped) {
+            return;
+        }
+        long delay = reconnectDelayMs;
+        reconnectDelayMs = Math.min(reconnectDelayMs * 2, MAX_RECONNECT_DELAY_MS);
+        scheduler.schedule(this::register, delay, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        ListenerRegistration current = registration;
+        if (current != null) {
+            current.remove();
+        }
+        scheduler.shutdownNow();
+    }
+}
@@ -1,22 +1,44 @@
 package com.projet.lalana.service;
 
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.BulkWriterOptions;
+import com.google.cloud.firestore.DocumentReference;
 import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldMask;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.FieldValue;
 import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
 import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
 import com.google.cloud.firestore.WriteResult;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.firebase.cloud.FirestoreClient;
+import com.projet.lalana.dto.DeleteReport;
 import com.projet.lalana.dto.SignalementRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 @Service
 public class FirestoreService {
 
+    private static final Logger logger = LoggerFactory.getLogger(FirestoreService.class);
+
+    /** Maximum number of operations Firestore accepts in a single WriteBatch. */
+    public static final int MAX_BATCH_WRITES = 500;
+
     public List<DocumentSnapshot> fetchAllSignalementDocuments() {
         List<DocumentSnapshot> result = new ArrayList<>();
         Firestore db = FirestoreClient.getFirestore();
@@ -27,7 +49,7 @@ public class FirestoreService {
                 result.addAll(querySnapshot.getDocuments());
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.error("Erreur lecture de la collection signalementAdd", e);
         }
         return result;
     }
@@ -42,8 +64,196 @@ public class FirestoreService {
             future.get();
             return true;
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.error("Erreur suppression du document {}/{}", collection, docId, e);
             return false;
         }
     }
+
+    /**
+     * Write (set) every document of the map into the collection with a single atomic WriteBatch.
+     * Keys are document ids. Throws when the commit fails so the caller can report the whole chunk.
+     */
+    public List<WriteResult> setAllInBatch(String collection, Map<String, Map<String, Object>> docsById)
+            throws InterruptedException, ExecutionException {
+        if (docsById.size() > MAX_BATCH_WRITES) {
+            throw new IllegalArgumentException("Un WriteBatch Firestore est limité à " + MAX_BATCH_WRITES
+                    + " opérations (reçu " + docsById.size() + ")");
+        }
+        Firestore db = FirestoreClient.getFirestore();
+        WriteBatch batch = db.batch();
+        for (Map.Entry<String, Map<String, Object>> entry : docsById.entrySet()) {
+            batch.set(db.collection(collection).document(entry.getKey()), entry.getValue());
+        }
+        return batch.commit().get();
+    }
+
+    /**
+     * Read one page of signalementAdd ordered by (updatedAt, document id), strictly after the
+     * given cursor. Documents without an updatedAt field are not returned by this query.
+     */
+    public List<DocumentSnapshot> fetchSignalementDocumentsPage(Timestamp afterUpdateTime, String afterDocId,
+            int limit) throws InterruptedException, ExecutionException {
+        Firestore db = FirestoreClient.getFirestore();
+        Query query = db.collection("signalementAdd")
+                .orderBy("updatedAt")
+                .orderBy(FieldPath.documentId())
+                .limit(limit);
+        if (afterUpdateTime != null && afterDocId != null) {
+            query = query.startAfter(afterUpdateTime, afterDocId);
+        }
+        return new ArrayList<>(query.get().get().getDocuments());
+    }
+
+    /**
+     * Read every document of the collection, paging by document id and reading only the given
+     * fields, so that a full scan stays cheap.
+     */
+    public List<DocumentSnapshot> scanDocuments(String collection, int pageSize, String... fields)
+            throws InterruptedException, ExecutionException {
+        Firestore db = FirestoreClient.getFirestore();
+        Query base = db.collection(collection).orderBy(FieldPath.documentId()).select(fields).limit(pageSize);
+        List<DocumentSnapshot> result = new ArrayList<>();
+        DocumentSnapshot last = null;
+        while (true) {
+            List<QueryDocumentSnapshot> page = (last == null ? base : base.startAfter(last)).get().get()
+                    .getDocuments();
+            result.addAll(page);
+            if (page.size() < pageSize) {
+                return result;
+            }
+            last = page.get(page.size() - 1);
+        }
+    }
+
+    /**
+     * Set the given field to the server timestamp on each document, grouped in WriteBatch chunks.
+     * Returns the number of documents updated; a failed chunk is logged and skipped.
+     */
+    public int touchServerTimestamp(String collection, List<String> docIds, String field) {
+        Firestore db = FirestoreClient.getFirestore();
+        int updated = 0;
+        for (int start = 0; start < docIds.size(); start += MAX_BATCH_WRITES) {
+            List<String> chunk = docIds.subList(start, Math.min(start + MAX_BATCH_WRITES, docIds.size()));
+            WriteBatch batch = db.batch();
+            for (String docId : chunk) {
+                batch.update(db.collection(collection).document(docId), field, FieldValue.serverTimestamp());
+            }
+            try {
+                batch.commit().get();
+                updated += chunk.size();
+            } catch (Exception e) {
+                logger.error("Erreur mise a jour de {} sur un lot de {} document(s) dans {}", field, chunk.size(),
+                        collection, e);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Delete exactly the given documents, grouped in WriteBatch chunks. Returns the number of
+     * documents deleted; a failed chunk is logged and skipped.
+     */
+    public int deleteDocuments(String collection, List<String> docIds) {
+        Firestore db = FirestoreClient.getFirestore();
+        int deleted = 0;
+        for (int start = 0; start < docIds.size(); start += MAX_BATCH_WRITES) {
+            List<String> chunk = docIds.subList(start, Math.min(start + MAX_BATCH_WRITES, docIds.size()));
+            WriteBatch batch = db.batch();
+            for (String docId : chunk) {
+                batch.delete(db.collection(collection).document(docId));
+            }
+            try {
+                batch.commit().get();
+                deleted += chunk.size();
+            } catch (Exception e) {
+                logger.error("Erreur suppression d'un lot de {} document(s) dans {}", chunk.size(), collection, e);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Read the given documents with a single getAll RPC. Documents that no longer exist are
+     * left out of the result.
+     */
+    public List<DocumentSnapshot> fetchDocuments(String collection, List<String> docIds)
+            throws InterruptedException, ExecutionException {
+        return fetchDocuments(collection, docIds, (String[]) null);
+    }
+
+    /**
+     * Same as {@link #fetchDocuments(String, List)}, reading only the given fields.
+     */
+    public List<DocumentSnapshot> fetchDocuments(String collection, List<String> docIds, String... fields)
+            throws InterruptedException, ExecutionException {
+        List<DocumentSnapshot> result = new ArrayList<>();
+        if (docIds.isEmpty()) {
+            return result;
+        }
+        Firestore db = FirestoreClient.getFirestore();
+        DocumentReference[] refs = docIds.stream()
+                .map(id -> db.collection(collection).document(id))
+                .toArray(DocumentReference[]::new);
+        List<DocumentSnapshot> snapshots = fields == null ? db.getAll(refs).get()
+                : db.getAll(refs, FieldMask.of(fields)).get();
+        for (DocumentSnapshot snapshot : snapshots) {
+            if (snapshot.exists()) {
+                result.add(snapshot);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Delete every document of the collection whose field equals value, paging by document id and
+     * deleting through a BulkWriter. The BulkWriter ramps up and bounds its own concurrency
+     * (capped by maxOpsPerSecond); each page is flushed before the next one is read so memory
+     * stays bounded by pageSize.
+     */
+    public DeleteReport bulkDeleteWhere(String collection, String field, Object value, int pageSize,
+            int maxOpsPerSecond) throws InterruptedException, ExecutionException {
+        long start = System.currentTimeMillis();
+        DeleteReport report = new DeleteReport(collection);
+        Firestore db = FirestoreClient.getFirestore();
+        BulkWriter writer = db.bulkWriter(BulkWriterOptions.builder()
+                .setInitialOpsPerSecond(Math.min(500, maxOpsPerSecond))
+                .setMaxOpsPerSecond(maxOpsPerSecond)
+                .build());
+        try {
+            Query base = db.collection(collection).whereEqualTo(field, value)
+                    .orderBy(FieldPath.documentId()).select(new String[0]).limit(pageSize);
+            DocumentSnapshot last = null;
+            while (true) {
+                List<QueryDocumentSnapshot> page = (last == null ? base : base.startAfter(last)).get().get()
+                        .getDocuments();
+                if (page.isEmpty()) {
+                    break;
+                }
+                report.setPages(report.getPages() + 1);
+                report.setMatched(report.getMatched() + page.size());
+                for (QueryDocumentSnapshot doc : page) {
+                    ApiFutures.addCallback(writer.delete(doc.getReference()), new ApiFutureCallback<WriteResult>() {
+                        @Override
+                        public void onSuccess(WriteResult result) {
+                            report.succeeded();
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            report.failed(doc.getId());
+                        }
+                    }, MoreExecutors.directExecutor());
+                }
+                writer.flush().get();
+                if (page.size() < pageSize) {
+                    break;
+                }
+                last = page.get(page.size() - 1);
+            }
+        } finally {
+            writer.close();
+        }
+        report.setDurationMs(System.currentTimeMillis() - start);
+        return report;
+    }
 }
@@ -0,0 +1,34 @@
+package com.projet.lalana.service;
+
+import com.projet.lalana.model.HistoryRollup;
+import com.projet.lalana.model.Probleme;
+import com.projet.lalana.model.ProblemeHistory;
+import com.projet.lalana.model.SignalementHistory;
+import jakarta.persistence.PrePersist;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener JPA des entites d'historique : alimente HistoryRollupService a chaque persist,
+ * quel que soit le chemin d'ecriture (API, import Firestore par lots...).
+ */
+@Component
+@RequiredArgsConstructor
+public class HistoryRollupListener {
+
+    private final HistoryRollupService historyRollupService;
+
+    @PrePersist
+    public void onPersist(Object entity) {
+        if (entity instanceof ProblemeHistory history) {
+            Probleme probleme = history.getProbleme();
+            historyRollupService.record(HistoryRollup.SOURCE_PROBLEME, history.getChangedAt(),
+                    history.getStatus() != null ? history.getStatus().getValeur() : null,
+                    probleme != null && probleme.getEntreprise() != null ? probleme.getEntreprise().getId() : null,
+                    probleme != null ? probleme.getNiveau() : null);
+        } else if (entity instanceof SignalementHistory history) {
+            historyRollupService.record(HistoryRollup.SOURCE_SIGNALEMENT, history.getChangedAt(),
+                    history.getStatus() != null ? history.getStatus().getValeur() : null, null, null);
+        }
+    }
+}
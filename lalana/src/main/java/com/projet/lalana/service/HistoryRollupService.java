@@ -0,0 +1,184 @@
+package com.projet.lalana.service;
+
+import com.projet.lalana.model.HistoryRollup;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maintenance de la table history_rollup.
+ *
+ * Chaque entree d'historique persistee (voir HistoryRollupListener) est comptee dans une map liee
+ * a la transaction courante ; juste avant le commit, les compteurs du jour et de la semaine sont
+ * ajoutes en un seul upsert par lot, cles triees. Un import de milliers de lignes ne coute donc
+ * qu'un lot d'upserts par transaction, et rien n'est compte si la transaction est annulee.
+ */
+@Service
+@RequiredArgsConstructor
+public class HistoryRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryRollupService.class);
+
+    private static final String UPSERT = """
+            INSERT INTO history_rollup (rollup_key, source, granularity, bucket_start, status_valeur,
+                entreprise_id, niveau, event_count)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (rollup_key) DO UPDATE SET event_count = history_rollup.event_count + EXCLUDED.event_count
+            """;
+
+    private static final String REBUILD_SELECT = """
+            INSERT INTO history_rollup (rollup_key, source, granularity, bucket_start, status_valeur,
+                entreprise_id, niveau, event_count)
+            SELECT concat_ws('|', r.source, r.granularity, to_char(r.bucket_start, 'YYYY-MM-DD'), r.status_valeur,
+                       r.entreprise_id, r.niveau),
+                   r.source, r.granularity, r.bucket_start, r.status_valeur, r.entreprise_id, r.niveau, r.n
+            FROM (
+                SELECT 'PROBLEME' AS source, g.granularity,
+                       CASE WHEN g.granularity = 'DAY' THEN ph.changed_at::date
+                            ELSE date_trunc('week', ph.changed_at)::date END AS bucket_start,
+                       COALESCE(hs.valeur, 0) AS status_valeur,
+                       COALESCE(p.entreprise_id, 0) AS entreprise_id,
+                       COALESCE(p.niveau, 0) AS niveau,
+                       COUNT(*) AS n
+                FROM probleme_history ph
+                JOIN probleme p ON p.id = ph.probleme_id
+                LEFT JOIN probleme_status hs ON hs.id = ph.status_id
+                CROSS JOIN (VALUES ('DAY'), ('WEEK')) AS g(granularity)
+                WHERE ph.changed_at IS NOT NULL
+                GROUP BY 1, 2, 3, 4, 5, 6
+                UNION ALL
+                SELECT 'SIGNALEMENT', g.granularity,
+                       CASE WHEN g.granularity = 'DAY' THEN sh.changed_at::date
+                            ELSE date_trunc('week', sh.changed_at)::date END,
+                       COALESCE(ss.valeur, 0), 0, 0, COUNT(*)
+                FROM signalement_history sh
+                LEFT JOIN signalement_status ss ON ss.id = sh.status_id
+                CROSS JOIN (VALUES ('DAY'), ('WEEK')) AS g(granularity)
+                WHERE sh.changed_at IS NOT NULL
+                GROUP BY 1, 2, 3, 4, 5, 6
+            ) r
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${analytics.rollup.enabled:true}")
+    private boolean enabled;
+
+    private record Delta(String source, String granularity, LocalDate bucketStart, int statusValeur,
+            int entrepriseId, int niveau, long[] count) {
+    }
+
+    /**
+     * Compte une entree d'historique ; appele au persist de SignalementHistory / ProblemeHistory.
+     */
+    public void record(String source, LocalDateTime changedAt, Integer statusValeur, Integer entrepriseId,
+            Integer niveau) {
+        if (!enabled) {
+            return;
+        }
+        LocalDate day = (changedAt != null ? changedAt : LocalDateTime.now()).toLocalDate();
+        int status = statusValeur != null ? statusValeur : 0;
+        int entreprise = entrepriseId != null ? entrepriseId : 0;
+        int level = niveau != null ? niveau : 0;
+
+        Map<String, Delta> pending = pendingDeltas();
+        add(pending, source, HistoryRollup.DAY, day, status, entreprise, level);
+        add(pending, source, HistoryRollup.WEEK, day.with(DayOfWeek.MONDAY), status, entreprise, level);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(pending);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Delta> pendingDeltas() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return new TreeMap<>();
+        }
+        Map<String, Delta> pending = (Map<String, Delta>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<String, Delta> deltas = new TreeMap<>();
+            TransactionSynchronizationManager.bindResource(this, deltas);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    apply(deltas);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(HistoryRollupService.this);
+                }
+            });
+            pending = deltas;
+        }
+        return pending;
+    }
+
+    private static void add(Map<String, Delta> pending, String source, String granularity, LocalDate bucket,
+            int status, int entreprise, int niveau) {
+        String key = HistoryRollup.key(source, granularity, bucket, status, entreprise, niveau);
+        pending.computeIfAbsent(key, k -> new Delta(source, granularity, bucket, status, entreprise, niveau,
+                new long[1])).count()[0]++;
+    }
+
+    private void apply(Map<String, Delta> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(pending.size());
+        pending.forEach((key, d) -> rows.add(new Object[] { key, d.source(), d.granularity(),
+                Date.valueOf(d.bucketStart()), d.statusValeur(), d.entrepriseId(), d.niveau(), d.count()[0] }));
+        jdbcTemplate.batchUpdate(UPSERT, rows);
+        pending.clear();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Boolean empty = jdbcTemplate.queryForObject("SELECT NOT EXISTS (SELECT 1 FROM history_rollup)",
+                    Boolean.class);
+            if (Boolean.TRUE.equals(empty)) {
+                rebuild();
+            }
+        } catch (Exception e) {
+            logger.error("[ANALYTICS] Reconstruction initiale des rollups impossible: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recalcule tous les rollups depuis signalement_history et probleme_history.
+     */
+    public int rebuild() {
+        long start = System.currentTimeMillis();
+        Integer rows = new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.execute("LOCK TABLE history_rollup IN EXCLUSIVE MODE");
+            jdbcTemplate.update("DELETE FROM history_rollup");
+            return jdbcTemplate.update(REBUILD_SELECT);
+        });
+        logger.info("[ANALYTICS] Rollups reconstruits : {} ligne(s) en {} ms", rows,
+                System.currentTimeMillis() - start);
+        return rows != null ? rows : 0;
+    }
+}
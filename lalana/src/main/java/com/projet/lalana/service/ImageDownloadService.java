@@ -0,0 +1,261 @@
+package com.projet.lalana.service;
+
+import com.projet.lalana.model.ImageDownloadStatus;
+import com.projet.lalana.model.SignalementImage;
+import com.projet.lalana.repository.SignalementImageRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Telechargement asynchrone des images de signalement importees depuis Firestore.
+ *
+ * L'import enregistre les lignes signalement_images en PENDING puis appelle {@link #schedule(Integer)} ;
+ * le telechargement s'execute apres le commit sur le pool imageDownloadExecutor, avec un nombre
+ * maximal de telechargements simultanes par hote, des timeouts HTTP (dont une echeance totale par
+ * telechargement) et des relances avec backoff exponentiel. Le fichier telecharge est range dans le
+ * {@link ImageStoreService} (hash calcule pendant la copie) ; une URL deja telechargee par une autre
+ * image est reutilisee sans appel reseau.
+ * Les variantes (miniature, taille moyenne) sont generees juste apres par {@link ImageVariantService}.
+ * En fin de telechargement contentHash et cheminLocal sont renseignes et la ligne passe en DONE
+ * (ERROR apres la derniere tentative). Les lignes PENDING sont reprises au demarrage.
+ */
+@Service
+@RequiredArgsConstructor
+public class ImageDownloadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageDownloadService.class);
+    private static final long HOST_BUSY_RETRY_MS = 200;
+
+    private final SignalementImageRepository signalementImageRepository;
+    private final ImageStoreService imageStoreService;
+    private final ImageVariantService imageVariantService;
+
+    @Qualifier("imageDownloadExecutor")
+    private final ScheduledExecutorService imageDownloadExecutor;
+
+    @Value("${images.download.per-host:4}")
+    private int perHostLimit;
+
+    @Value("${images.download.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${images.download.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    @Value("${images.download.total-timeout-ms:120000}")
+    private long totalTimeoutMs;
+
+    @Value("${images.download.max-attempts:4}")
+    private int maxAttempts;
+
+    @Value("${images.download.backoff-ms:1000}")
+    private long backoffMs;
+
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private volatile HttpClient httpClient;
+
+    /**
+     * Programme le telechargement de l'image. Dans une transaction, la soumission est differee
+     * apres le commit pour que le worker relise la ligne enregistree.
+     */
+    public void schedule(Integer imageId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(imageId, 1, 0);
+                }
+            });
+        } else {
+            submit(imageId, 1, 0);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePending() {
+        List<SignalementImage> pending = signalementImageRepository.findByDownloadStatus(ImageDownloadStatus.PENDING);
+        if (!pending.isEmpty()) {
+            logger.info("[IMAGES] Reprise de {} téléchargement(s) en attente", pending.size());
+            pending.forEach(img -> submit(img.getId(), 1, 0));
+        }
+    }
+
+    private void submit(Integer imageId, int attempt, long delayMs) {
+        imageDownloadExecutor.schedule(() -> run(imageId, attempt), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Une erreur hors telechargement (base indisponible...) est tracee et la tentative reprogrammee :
+     * sans cela elle disparaitrait dans le ScheduledFuture et la ligne resterait PENDING.
+     */
+    private void run(Integer imageId, int attempt) {
+        try {
+            process(imageId, attempt);
+        } catch (Exception e) {
+            long delay = backoffMs << Math.min(attempt - 1, 10);
+            logger.error("[IMAGES] Erreur inattendue pour l'image {}, nouvel essai dans {} ms: {}", imageId, delay,
+                    e.getMessage(), e);
+            submit(imageId, attempt, delay);
+        }
+    }
+
+    private void process(Integer imageId, int attempt) {
+        SignalementImage img = signalementImageRepository.findById(imageId).orElse(null);
+        if (img == null || img.getDownloadStatus() != ImageDownloadStatus.PENDING) {
+            return;
+        }
+        Optional<SignalementImage> known = signalementImageRepository
+                .findFirstByCheminOnlineAndContentHashIsNotNull(img.getCheminOnline());
+        if (known.isPresent() && imageStoreService.exists(known.get().getContentHash())) {
+            String hash = known.get().getContentHash();
+            img.setContentHash(hash);
+            img.setCheminLocal(imageStoreService.pathFor(hash).toString());
+            img.setCheminThumbnail(known.get().getCheminThumbnail());
+            img.setCheminMedium(known.get().getCheminMedium());
+            img.setDownloadStatus(ImageDownloadStatus.DONE);
+            img.setDownloadAttempts(0);
+            signalementImageRepository.save(img);
+            return;
+        }
+
+        URI uri;
+        try {
+            uri = URI.create(img.getCheminOnline());
+        } catch (Exception e) {
+            markFailed(img, attempt, "URL invalide: " + img.getCheminOnline());
+            return;
+        }
+
+        Semaphore permits = hostPermits.computeIfAbsent(String.valueOf(uri.getHost()),
+                h -> new Semaphore(Math.max(1, perHostLimit)));
+        if (!permits.tryAcquire()) {
+            submit(imageId, attempt, HOST_BUSY_RETRY_MS);
+            return;
+        }
+        try {
+            ImageStoreService.StoredImage stored = download(uri);
+            img.setContentHash(stored.getHash());
+            img.setCheminLocal(stored.getPath().toString());
+            img.setDownloadStatus(ImageDownloadStatus.DONE);
+            img.setDownloadAttempts(attempt);
+            img.setDownloadError(null);
+            attachVariants(img, stored.getPath());
+            signalementImageRepository.save(img);
+        } catch (Exception e) {
+            if (attempt < maxAttempts) {
+                long delay = backoffMs << (attempt - 1);
+                logger.warn("[IMAGES] Échec téléchargement {} (tentative {}/{}), nouvel essai dans {} ms: {}",
+                        uri, attempt, maxAttempts, delay, e.getMessage());
+                submit(imageId, attempt + 1, delay);
+            } else {
+                markFailed(img, attempt, e.getMessage());
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Telecharge dans un fichier temporaire avec une echeance totale (en-tetes et corps) :
+     * HttpRequest.timeout ne borne que l'attente des en-tetes, un serveur qui cesse d'envoyer le
+     * corps bloquerait sinon le worker et le permis de l'hote indefiniment. A l'echeance l'echange
+     * est annule.
+     */
+    private ImageStoreService.StoredImage download(URI uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(Duration.ofMillis(readTimeoutMs))
+                .GET()
+                .build();
+        Path tmp = Files.createTempFile("image-download-", ".part");
+        try {
+            CompletableFuture<HttpResponse<Path>> exchange = client().sendAsync(request,
+                    HttpResponse.BodyHandlers.ofFile(tmp));
+            HttpResponse<Path> response;
+            try {
+                response = exchange.get(totalTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                exchange.cancel(true);
+                throw new IOException("Téléchargement non terminé après " + totalTimeoutMs + " ms");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            }
+            if (response.statusCode() / 100 != 2) {
+                throw new IOException("HTTP " + response.statusCode());
+            }
+            try (InputStream body = Files.newInputStream(tmp)) {
+                return imageStoreService.store(body);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Les variantes sont facultatives : un echec de generation ne remet pas en cause le
+     * telechargement.
+     */
+    private void attachVariants(SignalementImage img, Path original) {
+        try {
+            ImageVariantService.Variants variants = imageVariantService.generate(original);
+            if (variants != null) {
+                img.setCheminThumbnail(variants.getThumbnail().toString());
+                img.setCheminMedium(variants.getMedium().toString());
+            }
+        } catch (Exception e) {
+            logger.warn("[IMAGES] Échec génération des variantes pour l'image {}: {}", img.getId(), e.getMessage());
+        }
+    }
+
+    private void markFailed(SignalementImage img, int attempt, String error) {
+        logger.error("[IMAGES] Téléchargement abandonné pour l'image {} ({}): {}", img.getId(), img.getCheminOnline(),
+                error);
+        img.setDownloadStatus(ImageDownloadStatus.ERROR);
+        img.setDownloadAttempts(attempt);
+        img.setDownloadError(error != null && error.length() > 500 ? error.substring(0, 500) : error);
+        signalementImageRepository.save(img);
+    }
+
+    private HttpClient client() {
+        HttpClient c = httpClient;
+        if (c == null) {
+            synchronized (this) {
+                if (httpClient == null) {
+                    httpClient = HttpClient.newBuilder()
+                            .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                            .followRedirects(HttpClient.Redirect.NORMAL)
+                            .build();
+                }
+                c = httpClient;
+            }
+        }
+        return c;
+    }
+}
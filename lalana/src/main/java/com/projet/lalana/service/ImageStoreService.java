@@ -0,0 +1,143 @@
+package com.projet.lalana.service;
+
+import com.projet.lalana.model.SignalementImage;
+import com.projet.lalana.repository.SignalementImageRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Stockage adresse par contenu des images sous uploads.base-dir/store.
+ *
+ * Chaque fichier est nomme par le SHA-256 de son contenu et range dans deux niveaux de
+ * sous-repertoires ({@code store/ab/cd/abcd...}). Le hash est calcule pendant l'ecriture du flux :
+ * si le contenu existe deja, le fichier temporaire est supprime et le fichier existant reutilise.
+ * Les fichiers sont servis par /api/images/{id} (voir SignalementImage#getUrl).
+ */
+@Service
+@RequiredArgsConstructor
+public class ImageStoreService {
+
+    private final SignalementImageRepository signalementImageRepository;
+
+    @Value("${uploads.base-dir:src/main/resources/static/images}")
+    private String uploadsBaseDir;
+
+    @Getter
+    @AllArgsConstructor
+    public static class StoredImage {
+        private final String hash;
+        private final Path path;
+        private final boolean duplicate;
+    }
+
+    /**
+     * Fichier local a servir pour une image : chemin, ETag et indicateur de contenu immuable
+     * (fichier du store, nomme par son hash).
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class ServedFile {
+        private final Path path;
+        private final String etag;
+        private final boolean immutable;
+        private final String fileName;
+    }
+
+    /**
+     * Resout le fichier local d'une image et de sa variante (original, thumb, medium).
+     */
+    public ServedFile resolve(Integer imageId, String variant) throws IOException {
+        SignalementImage img = signalementImageRepository.findById(imageId)
+                .orElseThrow(() -> new ServiceException("Image non trouvée pour l'ID: " + imageId));
+        String chemin;
+        switch (variant == null ? "original" : variant) {
+            case "thumb":
+                chemin = img.getCheminThumbnail();
+                break;
+            case "medium":
+                chemin = img.getCheminMedium();
+                break;
+            case "original":
+                chemin = img.getCheminLocal();
+                break;
+            default:
+                throw new ServiceException("Variante d'image inconnue: " + variant);
+        }
+        if (chemin == null || chemin.isBlank() || !Files.isRegularFile(Paths.get(chemin))) {
+            throw new ServiceException("Fichier local indisponible pour l'image " + imageId + " (" + variant + ")");
+        }
+        Path path = Paths.get(chemin);
+        boolean immutable = img.getContentHash() != null;
+        String etag = immutable
+                ? "\"" + img.getContentHash() + ("original".equals(variant) ? "" : "-" + variant) + "\""
+                : "W/\"" + Files.size(path) + "-" + Files.getLastModifiedTime(path).toMillis() + "\"";
+        String fileName = "original".equals(variant) ? img.getNomFichier() : path.getFileName().toString();
+        return new ServedFile(path, etag, immutable, fileName);
+    }
+
+    /**
+     * Ecrit le flux dans le store en calculant son hash au fil de l'eau.
+     */
+    public StoredImage store(InputStream in) throws IOException {
+        Path root = storeRoot();
+        Files.createDirectories(root);
+        Path tmp = Files.createTempFile(root, "upload-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            try (DigestInputStream din = new DigestInputStream(in, digest);
+                    OutputStream out = Files.newOutputStream(tmp)) {
+                din.transferTo(out);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+            Path target = pathFor(hash);
+            if (Files.exists(target)) {
+                return new StoredImage(hash, target, true);
+            }
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException race) {
+                return new StoredImage(hash, target, true);
+            }
+            return new StoredImage(hash, target, false);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public Path pathFor(String hash) {
+        return storeRoot().resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+    }
+
+    public boolean exists(String hash) {
+        return hash != null && Files.exists(pathFor(hash));
+    }
+
+    private Path storeRoot() {
+        return Paths.get(uploadsBaseDir, "store");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.projet.lalana.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+
+/**
+ * Generation des variantes d'une image (miniature et taille moyenne) en JPEG progressif avec
+ * ImageIO. Les variantes sont ecrites a cote de l'original ({@code <nom>_thumb.jpg},
+ * {@code <nom>_medium.jpg}) ; pour un fichier du store elles sont donc partagees par toutes les
+ * images de meme contenu et ne sont generees qu'une fois.
+ */
+@Service
+public class ImageVariantService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageVariantService.class);
+
+    public static final String THUMBNAIL_SUFFIX = "_thumb.jpg";
+    public static final String MEDIUM_SUFFIX = "_medium.jpg";
+
+    @Value("${images.variants.thumbnail-size:200}")
+    private int thumbnailSize;
+
+    @Value("${images.variants.medium-size:800}")
+    private int mediumSize;
+
+    @Value("${images.variants.quality:0.8}")
+    private float quality;
+
+    @Value("${images.variants.max-pixels:100000000}")
+    private long maxPixels;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Variants {
+        private final Path thumbnail;
+        private final Path medium;
+    }
+
+    /**
+     * Genere (si absentes) les variantes de l'image. Retourne null si le format n'est pas lisible.
+     */
+    public Variants generate(Path original) throws IOException {
+        Path thumbnail = original.resolveSibling(original.getFileName() + THUMBNAIL_SUFFIX);
+        Path medium = original.resolveSibling(original.getFileName() + MEDIUM_SUFFIX);
+        if (Files.exists(thumbnail) && Files.exists(medium)) {
+            return new Variants(thumbnail, medium);
+        }
+
+        BufferedImage source = readSubsampled(original, mediumSize);
+        if (source == null) {
+            return null;
+        }
+        write(resize(source, mediumSize), medium);
+        write(resize(source, thumbnailSize), thumbnail);
+        return new Variants(thumbnail, medium);
+    }
+
+    /**
+     * Decode l'image sans la charger en pleine resolution : les dimensions sont lues dans l'en-tete,
+     * une image de plus de images.variants.max-pixels est refusee, et les autres sont decodees avec
+     * un sous-echantillonnage qui garde le plus grand cote au-dessus de minSize. Retourne null si
+     * le format n'est pas lisible ou l'image refusee.
+     */
+    private BufferedImage readSubsampled(Path original, int minSize) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(original.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                logger.warn("[IMAGES] Format non supporté, pas de variantes pour {}", original);
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int w = reader.getWidth(0);
+                int h = reader.getHeight(0);
+                if ((long) w * h > maxPixels) {
+                    logger.warn("[IMAGES] Image de {}x{} pixels au-delà de la limite ({}), pas de variantes pour {}",
+                            w, h, maxPixels, original);
+                    return null;
+                }
+                int step = Math.max(1, Math.max(w, h) / Math.max(1, minSize));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Redimensionne pour que le plus grand cote ne depasse pas maxSize (sans agrandir).
+     */
+    private static BufferedImage resize(BufferedImage source, int maxSize) {
+        int w = source.getWidth();
+        int h = source.getHeight();
+        double scale = Math.min(1.0, (double) maxSize / Math.max(w, h));
+        int tw = Math.max(1, (int) Math.round(w * scale));
+        int th = Math.max(1, (int) Math.round(h * scale));
+
+        BufferedImage target = new BufferedImage(tw, th, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(source, 0, 0, tw, th, java.awt.Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    private void write(BufferedImage image, Path dest) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("Aucun encodeur JPEG disponible");
+        }
+        ImageWriter writer = writers.next();
+        Path part = dest.resolveSibling(dest.getFileName() + ".part");
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(part.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        Files.move(part, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
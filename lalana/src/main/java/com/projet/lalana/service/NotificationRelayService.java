@@ -0,0 +1,285 @@
+package com.projet.lalana.service;
+
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.MessagingErrorCode;
+import com.projet.lalana.model.NotificationOutbox;
+import com.projet.lalana.model.NotificationOutboxStatus;
+import com.projet.lalana.repository.NotificationOutboxRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Relais de la table notification_outbox.
+ *
+ * Chaque passe reclame un lot de lignes (SELECT ... FOR UPDATE SKIP LOCKED, passage en SENDING)
+ * dans une transaction courte, envoie le lot via FcmNotificationService hors transaction, puis
+ * enregistre le resultat de chaque ligne : SENT, ERROR avec une date de reprise (backoff
+ * exponentiel avec gigue) pour les echecs transitoires, ou DEAD pour les echecs definitifs et apres
+ * notification.outbox.max-attempts tentatives. Le relais tourne sur son propre thread : a intervalle
+ * fixe, et des qu'une transaction ayant ecrit dans l'outbox est commitee.
+ *
+ * Une ligne dont l'envoi n'est pas termine apres send-timeout-ms (file du FcmDispatcher en pause)
+ * reste SENDING : son resultat est enregistre a la fin de l'envoi, et son locked_at est rafraichi
+ * en attendant pour qu'elle ne soit pas reprise comme ligne perimee et envoyee deux fois.
+ */
+@Service
+@RequiredArgsConstructor
+public class NotificationRelayService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationRelayService.class);
+
+    private final NotificationOutboxRepository notificationOutboxRepository;
+    private final FcmNotificationService fcmNotificationService;
+    private final PlatformTransactionManager transactionManager;
+    private final JdbcTemplate jdbcTemplate;
+    @Qualifier("notificationRelayExecutor")
+    private final ScheduledExecutorService notificationRelayExecutor;
+
+    @Value("${notification.outbox.relay.enabled:true}")
+    private boolean enabled;
+
+    @Value("${notification.outbox.poll-ms:5000}")
+    private long pollMs;
+
+    @Value("${notification.outbox.batch-size:200}")
+    private int batchSize;
+
+    @Value("${notification.outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${notification.outbox.retry.base-ms:5000}")
+    private long retryBaseMs;
+
+    @Value("${notification.outbox.retry.max-ms:3600000}")
+    private long retryMaxMs;
+
+    @Value("${notification.outbox.send-timeout-ms:90000}")
+    private long sendTimeoutMs;
+
+    @Value("${notification.outbox.stale-after-ms:120000}")
+    private long staleAfterMs;
+
+    private static final String RESULT_SQL = "UPDATE notification_outbox SET status = ?, attempts = ?, "
+            + "last_error = ?, sent_at = ?, next_attempt_at = ?, locked_at = NULL WHERE id = ?";
+
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    /** Lignes SENDING dont l'envoi est encore en cours apres send-timeout-ms. */
+    private final Map<Long, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            logger.info("[OUTBOX] Relais désactivé (notification.outbox.relay.enabled=false)");
+            return;
+        }
+        if (staleAfterMs <= sendTimeoutMs) {
+            logger.warn("[OUTBOX] stale-after-ms ({}) devrait dépasser send-timeout-ms ({})", staleAfterMs,
+                    sendTimeoutMs);
+        }
+        notificationRelayExecutor.scheduleWithFixedDelay(this::drain, pollMs, pollMs, TimeUnit.MILLISECONDS);
+        long heartbeatMs = Math.max(1000, staleAfterMs / 3);
+        notificationRelayExecutor.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Rafraichit locked_at des lignes encore en cours d'envoi.
+     */
+    void heartbeat() {
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        try {
+            Timestamp now = Timestamp.from(Instant.now());
+            List<Object[]> args = new ArrayList<>(inFlight.size());
+            inFlight.keySet().forEach(id -> args.add(new Object[] { now, id }));
+            jdbcTemplate.batchUpdate("UPDATE notification_outbox SET locked_at = ? WHERE id = ? AND status = 'SENDING'",
+                    args);
+        } catch (Exception e) {
+            logger.error("[OUTBOX] Erreur de rafraîchissement des lignes en cours: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Demande une passe immediate ; les appels rapproches sont fusionnes en une seule passe.
+     */
+    public void wakeUp() {
+        if (enabled && wakeUpPending.compareAndSet(false, true)) {
+            notificationRelayExecutor.execute(() -> {
+                wakeUpPending.set(false);
+                drain();
+            });
+        }
+    }
+
+    /**
+     * Envoie les lots tant que la table en fournit des pleins.
+     */
+    public void drain() {
+        try {
+            int size = Math.max(1, batchSize);
+            while (relayBatch(size) == size) {
+                // lot plein : il reste probablement des lignes
+            }
+        } catch (Exception e) {
+            logger.error("[OUTBOX] Erreur du relais: {}", e.getMessage(), e);
+        }
+    }
+
+    private int relayBatch(int size) {
+        heartbeat();
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        List<NotificationOutbox> claimed = tx.execute(status -> {
+            Instant now = Instant.now();
+            List<NotificationOutbox> rows = notificationOutboxRepository
+                    .lockBatch(now, now.minusMillis(staleAfterMs), size);
+            for (NotificationOutbox row : rows) {
+                row.setStatus(NotificationOutboxStatus.SENDING);
+                row.setLockedAt(now);
+            }
+            return rows;
+        });
+        if (claimed == null || claimed.isEmpty()) {
+            return 0;
+        }
+
+        List<CompletableFuture<String>> futures = new ArrayList<>(claimed.size());
+        for (NotificationOutbox row : claimed) {
+            CompletableFuture<String> future;
+            try {
+                future = fcmNotificationService.deliver(row);
+            } catch (Exception e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            futures.add(future);
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture<?>[]::new))
+                    .get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // les echecs sont lus ligne par ligne ci-dessous ; une ligne encore en cours reste SENDING
+        }
+
+        int sent = 0;
+        int retried = 0;
+        int dead = 0;
+        int pending = 0;
+        Instant now = Instant.now();
+        List<Object[]> updates = new ArrayList<>(claimed.size());
+        for (int i = 0; i < claimed.size(); i++) {
+            NotificationOutbox row = claimed.get(i);
+            CompletableFuture<String> future = futures.get(i);
+            if (!future.isDone()) {
+                inFlight.put(row.getId(), future);
+                future.whenComplete((messageId, error) -> recordLate(row, future));
+                pending++;
+                continue;
+            }
+            Object[] result = result(row, future, now);
+            updates.add(result);
+            if (NotificationOutboxStatus.SENT.name().equals(result[0])) {
+                sent++;
+            } else if (NotificationOutboxStatus.DEAD.name().equals(result[0])) {
+                dead++;
+            } else {
+                retried++;
+            }
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(RESULT_SQL, updates);
+        }
+        logger.info("[OUTBOX] Lot de {} notification(s) : {} envoyée(s), {} à réessayer, {} abandonnée(s), {} en attente",
+                claimed.size(), sent, retried, dead, pending);
+        return claimed.size();
+    }
+
+    /**
+     * Enregistre le resultat d'une ligne terminee apres send-timeout-ms.
+     */
+    private void recordLate(NotificationOutbox row, CompletableFuture<String> future) {
+        try {
+            jdbcTemplate.update(RESULT_SQL, result(row, future, Instant.now()));
+        } catch (Exception e) {
+            logger.error("[OUTBOX] Erreur d'enregistrement du résultat de la notification {}: {}", row.getId(),
+                    e.getMessage(), e);
+        } finally {
+            inFlight.remove(row.getId());
+        }
+    }
+
+    /**
+     * Parametres de RESULT_SQL pour une ligne dont l'envoi est termine.
+     */
+    Object[] result(NotificationOutbox row, CompletableFuture<String> future, Instant now) {
+        if (!future.isCompletedExceptionally()) {
+            return new Object[] { NotificationOutboxStatus.SENT.name(), row.getAttempts(), null, Timestamp.from(now),
+                    null, row.getId() };
+        }
+        Throwable cause = failureCause(future);
+        int attempts = row.getAttempts() + 1;
+        String error = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        if (isPermanent(cause) || attempts >= maxAttempts) {
+            return new Object[] { NotificationOutboxStatus.DEAD.name(), attempts, error, null, null, row.getId() };
+        }
+        Instant retryAt = now.plusMillis(retryDelayMs(attempts));
+        return new Object[] { NotificationOutboxStatus.ERROR.name(), attempts, error, null, Timestamp.from(retryAt),
+                row.getId() };
+    }
+
+    /**
+     * Delai avant la tentative suivante : base * 2^(tentatives-1), plafonne, avec une gigue
+     * aleatoire sur la moitie superieure pour etaler les reprises apres une panne FCM.
+     */
+    long retryDelayMs(int attempts) {
+        long delay = retryBaseMs << Math.min(attempts - 1, 20);
+        delay = Math.min(Math.max(delay, retryBaseMs), retryMaxMs);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * Erreurs qu'une nouvelle tentative ne corrigera pas (token invalide ou non enregistre).
+     */
+    private static boolean isPermanent(Throwable cause) {
+        if (cause instanceof FirebaseMessagingException fme) {
+            MessagingErrorCode code = fme.getMessagingErrorCode();
+            return code == MessagingErrorCode.UNREGISTERED || code == MessagingErrorCode.INVALID_ARGUMENT
+                    || code == MessagingErrorCode.SENDER_ID_MISMATCH;
+        }
+        return false;
+    }
+
+    private static Throwable failureCause(CompletableFuture<String> future) {
+        try {
+            future.join();
+            return new IllegalStateException("Envoi terminé sans erreur");
+        } catch (CompletionException e) {
+            return e.getCause() != null ? e.getCause() : e;
+        } catch (Exception e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.projet.lalana.service;
+
+import com.projet.lalana.dto.DurationStatsDto;
+import com.projet.lalana.model.ProblemeDurationSketch;
+import com.projet.lalana.model.ProblemeStats;
+import com.projet.lalana.repository.ProblemeDurationSketchRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Distributions des durees de transition (table probleme_duration_sketch), a l'heure pres.
+ *
+ * Chaque duree terminee incremente, en SQL et sans lecture prealable, un bucket de quatre esquisses :
+ * GLOBAL et ENTREPRISE:{id}, toutes periodes (ALL) et mois de fin de transition. La lecture fusionne
+ * les esquisses des mois demandes.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProblemeDurationStore {
+
+    public static final String NOUVEAU_TO_EN_COURS = "nouveauToEnCours";
+    public static final String EN_COURS_TO_TERMINE = "enCoursToTermine";
+    public static final String TOTAL = "total";
+    public static final List<String> METRICS = List.of(NOUVEAU_TO_EN_COURS, EN_COURS_TO_TERMINE, TOTAL);
+
+    private static final DateTimeFormatter PERIOD_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    private static final String INSERT_SKETCH = """
+            INSERT INTO probleme_duration_sketch (sketch_key, scope_key, entreprise_id, period, metric,
+                total_count, buckets, updated_at)
+            VALUES (?, ?, ?, ?, ?, 0, array_fill(0::bigint, ARRAY[?]), NOW())
+            ON CONFLICT (sketch_key) DO NOTHING
+            """;
+
+    private static final String INCREMENT_BUCKET = """
+            UPDATE probleme_duration_sketch
+            SET buckets[?] = buckets[?] + 1, total_count = total_count + 1, updated_at = NOW()
+            WHERE sketch_key = ?
+            """;
+
+    private static final String HISTORY_TRANSITIONS = "SELECT p.entreprise_id, f.nouveau_at, f.en_cours_at, "
+            + "f.termine_at FROM probleme p JOIN (" + ProblemeStatsService.FIRST_TRANSITIONS
+            + " GROUP BY ph.probleme_id) f ON f.probleme_id = p.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProblemeDurationSketchRepository problemeDurationSketchRepository;
+
+    /**
+     * Duree terminee par une transition : de from (debut) a to (fin).
+     */
+    public record Sample(String metric, LocalDateTime from, LocalDateTime to) {
+
+        long hours() {
+            return Math.max(0, ChronoUnit.HOURS.between(from, to));
+        }
+
+        String period() {
+            return to.format(PERIOD_FORMAT);
+        }
+    }
+
+    private record Scope(String key, Integer entrepriseId) {
+    }
+
+    private record Target(String key, String scopeKey, Integer entrepriseId, String period, String metric,
+            int bucket) {
+    }
+
+    /**
+     * A appeler dans la transaction qui enregistre la transition.
+     */
+    public void record(Integer entrepriseId, List<Sample> samples) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        // cles triees : ordre de verrouillage stable entre transactions concurrentes
+        Map<String, Target> targets = new TreeMap<>();
+        for (Sample sample : samples) {
+            int bucket = DurationSketch.bucketOf(sample.hours());
+            for (Scope scope : scopes(entrepriseId)) {
+                for (String period : List.of(ProblemeDurationSketch.ALL_PERIODS, sample.period())) {
+                    String key = ProblemeDurationSketch.key(scope.key(), period, sample.metric());
+                    targets.put(key, new Target(key, scope.key(), scope.entrepriseId(), period,
+                            sample.metric(), bucket));
+                }
+            }
+        }
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> increments = new ArrayList<>();
+        for (Target t : targets.values()) {
+            inserts.add(new Object[] { t.key(), t.scopeKey(), t.entrepriseId(), t.period(), t.metric(),
+                    DurationSketch.BUCKETS });
+            increments.add(new Object[] { t.bucket() + 1, t.bucket() + 1, t.key() });
+        }
+        jdbcTemplate.batchUpdate(INSERT_SKETCH, inserts, new int[] { Types.VARCHAR, Types.VARCHAR,
+                Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.INTEGER });
+        jdbcTemplate.batchUpdate(INCREMENT_BUCKET, increments);
+    }
+
+    public boolean isEmpty() {
+        return problemeDurationSketchRepository.count() == 0;
+    }
+
+    /**
+     * Recalcule toutes les esquisses depuis probleme_transition (dans la transaction de reconstruction).
+     */
+    public int rebuild() {
+        jdbcTemplate.update("DELETE FROM probleme_duration_sketch");
+        Map<String, ProblemeDurationSketch> rows = new TreeMap<>();
+        Map<String, DurationSketch> sketches = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT entreprise_id, nouveau_at, en_cours_at, termine_at FROM probleme_transition",
+                rs -> {
+                    Integer entrepriseId = (Integer) rs.getObject("entreprise_id");
+                    LocalDateTime nouveau = rs.getObject("nouveau_at", LocalDateTime.class);
+                    LocalDateTime enCours = rs.getObject("en_cours_at", LocalDateTime.class);
+                    LocalDateTime termine = rs.getObject("termine_at", LocalDateTime.class);
+                    for (Sample sample : samples(nouveau, enCours, termine)) {
+                        for (Scope scope : scopes(entrepriseId)) {
+                            for (String period : List.of(ProblemeDurationSketch.ALL_PERIODS, sample.period())) {
+                                String key = ProblemeDurationSketch.key(scope.key(), period, sample.metric());
+                                rows.computeIfAbsent(key, k -> new ProblemeDurationSketch(k, scope.key(),
+                                        scope.entrepriseId(), period, sample.metric(), 0, null,
+                                        null));
+                                sketches.computeIfAbsent(key, k -> new DurationSketch()).add(sample.hours());
+                            }
+                        }
+                    }
+                });
+
+        List<ProblemeDurationSketch> list = new ArrayList<>(rows.values());
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO probleme_duration_sketch (sketch_key, scope_key, entreprise_id, period, metric,
+                    total_count, buckets, updated_at)
+                VALUES (?, ?, ?, ?, ?, ?, ?, NOW())
+                """, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                ProblemeDurationSketch row = list.get(i);
+                DurationSketch sketch = sketches.get(row.getSketchKey());
+                Long[] buckets = new Long[DurationSketch.BUCKETS];
+                long[] counts = sketch.toArray();
+                for (int b = 0; b < counts.length; b++) {
+                    buckets[b] = counts[b];
+                }
+                ps.setString(1, row.getSketchKey());
+                ps.setString(2, row.getScopeKey());
+                ps.setObject(3, row.getEntrepriseId(), Types.INTEGER);
+                ps.setString(4, row.getPeriod());
+                ps.setString(5, row.getMetric());
+                ps.setLong(6, sketch.getCount());
+                ps.setArray(7, ps.getConnection().createArrayOf("bigint", buckets));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return list.size();
+            }
+        });
+        return list.size();
+    }
+
+    /**
+     * Distributions fusionnees pour une portee (entrepriseId null = toutes entreprises) et une plage
+     * de mois yyyy-MM incluse ; sans plage, toutes periodes confondues.
+     */
+    public List<DurationStatsDto> durations(Integer entrepriseId, String from, String to) {
+        String scopeKey = entrepriseId != null ? ProblemeStats.entrepriseKey(entrepriseId)
+                : ProblemeStats.GLOBAL_KEY;
+        List<ProblemeDurationSketch> rows = from == null && to == null
+                ? problemeDurationSketchRepository.findByScopeKeyAndPeriod(scopeKey,
+                        ProblemeDurationSketch.ALL_PERIODS)
+                : problemeDurationSketchRepository.findByScopeKeyAndPeriodBetween(scopeKey,
+                        from != null ? from : "0000-00", to != null ? to : "9999-99");
+
+        Map<String, DurationSketch> merged = emptySketches();
+        for (ProblemeDurationSketch row : rows) {
+            DurationSketch target = merged.get(row.getMetric());
+            if (target != null) {
+                target.merge(DurationSketch.of(row.getBuckets()));
+            }
+        }
+        return toDtos(merged);
+    }
+
+    /**
+     * Memes distributions que {@link #durations}, calculees depuis probleme_history sans passer par
+     * les esquisses : utilise quand les statistiques materialisees sont desactivees (les esquisses
+     * ne sont alors plus tenues a jour) ou pas encore construites. Une passe sur les problemes.
+     */
+    public List<DurationStatsDto> durationsFromHistory(Integer entrepriseId, String from, String to) {
+        Map<String, DurationSketch> merged = emptySketches();
+        RowCallbackHandler handler = rs -> {
+            for (Sample sample : samples(rs.getObject("nouveau_at", LocalDateTime.class),
+                    rs.getObject("en_cours_at", LocalDateTime.class),
+                    rs.getObject("termine_at", LocalDateTime.class))) {
+                String period = sample.period();
+                if ((from == null || period.compareTo(from) >= 0) && (to == null || period.compareTo(to) <= 0)) {
+                    merged.get(sample.metric()).add(sample.hours());
+                }
+            }
+        };
+        if (entrepriseId != null) {
+            jdbcTemplate.query(HISTORY_TRANSITIONS + " WHERE p.entreprise_id = ?", handler, entrepriseId);
+        } else {
+            jdbcTemplate.query(HISTORY_TRANSITIONS, handler);
+        }
+        return toDtos(merged);
+    }
+
+    private static List<Sample> samples(LocalDateTime nouveau, LocalDateTime enCours, LocalDateTime termine) {
+        List<Sample> samples = new ArrayList<>(3);
+        if (nouveau != null && enCours != null) {
+            samples.add(new Sample(NOUVEAU_TO_EN_COURS, nouveau, enCours));
+        }
+        if (enCours != null && termine != null) {
+            samples.add(new Sample(EN_COURS_TO_TERMINE, enCours, termine));
+        }
+        if (nouveau != null && termine != null) {
+            samples.add(new Sample(TOTAL, nouveau, termine));
+        }
+        return samples;
+    }
+
+    private static Map<String, DurationSketch> emptySketches() {
+        Map<String, DurationSketch> sketches = new LinkedHashMap<>();
+        METRICS.forEach(m -> sketches.put(m, new DurationSketch()));
+        return sketches;
+    }
+
+    private static List<DurationStatsDto> toDtos(Map<String, DurationSketch> sketches) {
+        List<DurationStatsDto> out = new ArrayList<>(sketches.size());
+        sketches.forEach((metric, sketch) -> out.add(new DurationStatsDto(metric, sketch.getCount(),
+                sketch.percentiles(), sketch.histogram())));
+        return out;
+    }
+
+    private static List<Scope> scopes(Integer entrepriseId) {
+        List<Scope> scopes = new ArrayList<>(2);
+        scopes.add(new Scope(ProblemeStats.GLOBAL_KEY, null));
+        if (entrepriseId != null) {
+            scopes.add(new Scope(ProblemeStats.entrepriseKey(entrepriseId), entrepriseId));
+        }
+        return scopes;
+    }
+}
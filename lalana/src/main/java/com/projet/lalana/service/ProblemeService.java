@@ -2,25 +2,30 @@ package com.projet.lalana.service;
 
 import com.projet.lalana.model.Probleme;
 import com.projet.lalana.model.User;
+import com.projet.lalana.repository.ListSpecifications;
 import com.projet.lalana.repository.ProblemeRepository;
 import com.projet.lalana.repository.ProblemeStatusRepository;
 import com.projet.lalana.repository.ProblemeHistoryRepository;
+import com.projet.lalana.repository.SignalementRepository;
 import com.projet.lalana.model.ProblemeHistory;
 import com.projet.lalana.model.ProblemeStatus;
+import com.projet.lalana.dto.CursorPage;
+import com.projet.lalana.dto.DurationStatsDto;
+import com.projet.lalana.dto.ListFilter;
 import com.projet.lalana.dto.ManagerStatsDto;
-import com.projet.lalana.dto.ManagerStatsDto.ProblemeSampleDto;
+import com.projet.lalana.dto.NotificationOutboxDto;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import org.springframework.transaction.annotation.Transactional;
 import java.util.NoSuchElementException;
 
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -34,7 +39,16 @@ public class ProblemeService {
     private final ProblemeRepository problemeRepository;
     private final ProblemeStatusRepository problemeStatusRepository;
     private final ProblemeHistoryRepository problemeHistoryRepository;
-    private final FcmNotificationService fcmNotificationService;
+    private final NotificationOutboxService notificationOutboxService;
+    private final ProblemeStatsService problemeStatsService;
+    private final ProblemeStatsStore problemeStatsStore;
+    private final SignalementRepository signalementRepository;
+
+    @Value("${list.page.default-size:50}")
+    private int listDefaultSize;
+
+    @Value("${list.page.max-size:200}")
+    private int listMaxSize;
 
     public List<Probleme> getAll() {
         try {
@@ -45,6 +59,34 @@ public class ProblemeService {
         }
     }
 
+    /**
+     * Page de problemes par curseur (id decroissant) avec filtres optionnels ; les images des
+     * signalements de la page sont chargees en une seule requete.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Probleme> getPage(ListFilter filter, boolean nonResolus) {
+        try {
+            int limit = Math.max(1, Math.min(filter.getLimit() != null ? filter.getLimit() : listDefaultSize,
+                    listMaxSize));
+            List<Probleme> rows = problemeRepository.findBy(ListSpecifications.problemes(filter, nonResolus),
+                    q -> q.sortBy(Sort.by(Sort.Direction.DESC, "id")).limit(limit + 1).all());
+            Integer nextCursor = null;
+            if (rows.size() > limit) {
+                rows = new ArrayList<>(rows.subList(0, limit));
+                nextCursor = rows.get(limit - 1).getId();
+            }
+            List<Integer> signalementIds = rows.stream().filter(p -> p.getSignalement() != null)
+                    .map(p -> p.getSignalement().getId()).distinct().toList();
+            if (!signalementIds.isEmpty()) {
+                signalementRepository.fetchImages(signalementIds);
+            }
+            return new CursorPage<>(rows, nextCursor, limit);
+        } catch (Exception e) {
+            logger.error("Erreur lors de getPage problemes", e);
+            throw new ServiceException("Erreur lors de la récupération des problèmes", e);
+        }
+    }
+
     public Optional<Probleme> getById(Integer id) {
         try {
             return problemeRepository.findById(id);
@@ -74,6 +116,9 @@ public class ProblemeService {
             history.setStatus(processingStatus);
             history.setChangedAt(LocalDateTime.now());
             problemeHistoryRepository.save(history);
+            problemeStatsStore.recordTransition(saved.getId(),
+                    saved.getEntreprise() != null ? saved.getEntreprise().getId() : null,
+                    processingStatus.getValeur(), history.getChangedAt());
 
             return saved;
         } catch (ServiceException se) {
@@ -103,46 +148,26 @@ public class ProblemeService {
             history.setStatus(resolvedStatus);
             history.setChangedAt(LocalDateTime.now());
             problemeHistoryRepository.save(history);
+            problemeStatsStore.recordTransition(saved.getId(),
+                    saved.getEntreprise() != null ? saved.getEntreprise().getId() : null,
+                    resolvedStatus.getValeur(), history.getChangedAt());
 
-            // ✅ Envoi direct de notification FCM après résolution réussie
-            System.out.println("🔍 [PROBLEME] Vérification notification pour problème résolu id=" + saved.getId());
+            // Notification écrite dans l'outbox, dans cette transaction : envoyée par le relais après commit
             if (saved.getSignalement() != null &&
                     saved.getSignalement().getUser() != null &&
                     saved.getSignalement().getUser().getId() != null &&
                     saved.getSignalement().getUser().getFirebaseToken() != null) {
-                try {
-                    User user = saved.getSignalement().getUser();
-                    String userId = String.valueOf(user.getId());
-                    String userToken = user.getFirebaseToken();
-                    String description = saved.getSignalement().getDescription() != null
-                            ? saved.getSignalement().getDescription()
-                            : "Problème résolu";
-
-                    System.out.println("✅ [PROBLEME] Conditions remplies, appel du service FCM pour problème id="
-                            + saved.getId() + ", userId=" + userId);
-
-                    boolean notifSent = fcmNotificationService.sendProblemeResolvedNotification(
-                            saved.getId(),
-                            userId,
-                            userToken,
-                            description);
-
-                    if (notifSent) {
-                        System.out.println("📧 [PROBLEME] Notification FCM envoyée avec succès pour problème résolu id="
-                                + saved.getId());
-                    } else {
-                        System.out.println(
-                                "⚠️ [PROBLEME] Échec envoi notification FCM pour problème id=" + saved.getId());
-                    }
-                } catch (Exception notifError) {
-                    // On ne fait pas échouer la résolution si la notification échoue
-                    System.out.println("❌ [PROBLEME] Exception lors de l'envoi de notification pour problème id="
-                            + saved.getId() + ": " + notifError.getMessage());
-                    notifError.printStackTrace();
-                }
+                User user = saved.getSignalement().getUser();
+                String description = saved.getSignalement().getDescription() != null
+                        ? saved.getSignalement().getDescription()
+                        : "Problème résolu";
+                notificationOutboxService.enqueue(NotificationOutboxDto.forProblemeResolved(
+                        saved.getId(),
+                        String.valueOf(user.getId()),
+                        user.getFirebaseToken(),
+                        description));
             } else {
-                System.out.println(
-                        "⚠️ [PROBLEME] Conditions non remplies pour notification problème id=" + saved.getId());
+                logger.info("[PROBLEME] Pas de destinataire pour la notification du problème id={}", saved.getId());
             }
 
             return saved;
@@ -164,137 +189,42 @@ public class ProblemeService {
     }
 
     public ManagerStatsDto getManagerStats() {
-        try {
-            List<Probleme> allProblemes = problemeRepository.findAll();
-
-            long nouveauCount = allProblemes.stream()
-                    .filter(p -> p.getProblemeStatus() != null && p.getProblemeStatus().getValeur() == 10)
-                    .count();
-            long enCoursCount = allProblemes.stream()
-                    .filter(p -> p.getProblemeStatus() != null && p.getProblemeStatus().getValeur() == 20)
-                    .count();
-            long termineCount = allProblemes.stream()
-                    .filter(p -> p.getProblemeStatus() != null && p.getProblemeStatus().getValeur() == 30)
-                    .count();
-
-            Map<String, Integer> counts = new HashMap<>();
-            counts.put("nouveau", (int) nouveauCount);
-            counts.put("enCours", (int) enCoursCount);
-            counts.put("termine", (int) termineCount);
-            counts.put("total", allProblemes.size());
-
-            List<Double> nouveauToEnCoursDurations = new ArrayList<>();
-            List<Double> enCoursToTermineDurations = new ArrayList<>();
-            List<Double> totalDurations = new ArrayList<>();
-
-            for (Probleme p : allProblemes) {
-                List<ProblemeHistory> history = problemeHistoryRepository
-                        .findByProblemeIdOrderByChangedAtAsc(p.getId());
-
-                LocalDateTime nouveauDate = history.stream()
-                        .filter(h -> h.getStatus().getValeur() == 10)
-                        .map(ProblemeHistory::getChangedAt)
-                        .findFirst()
-                        .orElse(null);
-
-                LocalDateTime enCoursDate = history.stream()
-                        .filter(h -> h.getStatus().getValeur() == 20)
-                        .map(ProblemeHistory::getChangedAt)
-                        .findFirst()
-                        .orElse(null);
-
-                LocalDateTime termineDate = history.stream()
-                        .filter(h -> h.getStatus().getValeur() == 30)
-                        .map(ProblemeHistory::getChangedAt)
-                        .findFirst()
-                        .orElse(null);
-
-                if (nouveauDate != null && enCoursDate != null) {
-                    double days = ChronoUnit.DAYS.between(nouveauDate, enCoursDate);
-                    nouveauToEnCoursDurations.add(days);
-                }
-
-                if (enCoursDate != null && termineDate != null) {
-                    double days = ChronoUnit.DAYS.between(enCoursDate, termineDate);
-                    enCoursToTermineDurations.add(days);
-                }
-
-                if (nouveauDate != null && termineDate != null) {
-                    double days = ChronoUnit.DAYS.between(nouveauDate, termineDate);
-                    totalDurations.add(days);
-                }
-            }
-
-            Map<String, Double> averages = new HashMap<>();
-            averages.put("nouveauToEnCours",
-                    nouveauToEnCoursDurations.isEmpty() ? 0.0
-                            : nouveauToEnCoursDurations.stream().mapToDouble(d -> d).average().orElse(0.0));
-            averages.put("enCoursToTermine",
-                    enCoursToTermineDurations.isEmpty() ? 0.0
-                            : enCoursToTermineDurations.stream().mapToDouble(d -> d).average().orElse(0.0));
-            averages.put("totalNouveauToTermine",
-                    totalDurations.isEmpty() ? 0.0
-                            : totalDurations.stream().mapToDouble(d -> d).average().orElse(0.0));
-
-            Map<String, Integer> minMax = new HashMap<>();
-            if (!totalDurations.isEmpty()) {
-                minMax.put("min", totalDurations.stream().min(Double::compareTo).orElse(0.0).intValue());
-                minMax.put("max", totalDurations.stream().max(Double::compareTo).orElse(0.0).intValue());
-            } else {
-                minMax.put("min", 0);
-                minMax.put("max", 0);
-            }
-
-            List<Map<String, Object>> histogram = new ArrayList<>();
-
-            List<ProblemeSampleDto> samples = allProblemes.stream().map(p -> {
-                List<ProblemeHistory> history = problemeHistoryRepository
-                        .findByProblemeIdOrderByChangedAtAsc(p.getId());
-
-                LocalDateTime nouveauDate = history.stream()
-                        .filter(h -> h.getStatus().getValeur() == 10)
-                        .map(ProblemeHistory::getChangedAt)
-                        .findFirst()
-                        .orElse(null);
-
-                LocalDateTime enCoursDate = history.stream()
-                        .filter(h -> h.getStatus().getValeur() == 20)
-                        .map(ProblemeHistory::getChangedAt)
-                        .findFirst()
-                        .orElse(null);
-
-                LocalDateTime termineDate = history.stream()
-                        .filter(h -> h.getStatus().getValeur() == 30)
-                        .map(ProblemeHistory::getChangedAt)
-                        .findFirst()
-                        .orElse(null);
-
-                String localisation = (p.getSignalement() != null && p.getSignalement().getPoint() != null)
-                        ? p.getSignalement().getPoint().getLocalisation()
-                        : "Localisation inconnue";
-
-                String entrepriseName = (p.getEntreprise() != null) ? p.getEntreprise().getNom() : null;
-
-                Integer statusValeur = (p.getProblemeStatus() != null) ? p.getProblemeStatus().getValeur() : 0;
-
-                return new ProblemeSampleDto(
-                        p.getId(),
-                        entrepriseName,
-                        statusValeur,
-                        localisation,
-                        nouveauDate,
-                        enCoursDate,
-                        termineDate);
-            }).collect(Collectors.toList());
-
-            return new ManagerStatsDto(counts, averages, minMax, histogram, samples);
+        return getManagerStats(0, null);
+    }
 
+    /**
+     * Statistiques manager agrégées en SQL, avec une page d'échantillons.
+     */
+    public ManagerStatsDto getManagerStats(int page, Integer size) {
+        try {
+            return problemeStatsService.compute(page, size);
         } catch (Exception e) {
             logger.error("Erreur lors du calcul des statistiques manager", e);
             throw new ServiceException("Erreur lors du calcul des statistiques", e);
         }
     }
 
+    public List<DurationStatsDto> getDurationStats(Integer entrepriseId, String from, String to) {
+        try {
+            return problemeStatsService.durations(entrepriseId, from, to);
+        } catch (Exception e) {
+            logger.error("Erreur lors du calcul des distributions de durées", e);
+            throw new ServiceException("Erreur lors du calcul des distributions de durées", e);
+        }
+    }
+
+    /**
+     * Recalcule les statistiques matérialisées depuis l'historique des problèmes.
+     */
+    public int rebuildManagerStats() {
+        try {
+            return problemeStatsStore.rebuild();
+        } catch (Exception e) {
+            logger.error("Erreur lors de la reconstruction des statistiques manager", e);
+            throw new ServiceException("Erreur lors de la reconstruction des statistiques", e);
+        }
+    }
+
     public List<Probleme> findNonResolus() {
         try {
             return problemeRepository.findAllWithStatusOther();
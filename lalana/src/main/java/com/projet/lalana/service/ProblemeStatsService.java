@@ -0,0 +1,225 @@
+package com.projet.lalana.service;
+
+import com.projet.lalana.dto.DurationStatsDto;
+import com.projet.lalana.dto.ManagerStatsDto;
+import com.projet.lalana.dto.ManagerStatsDto.EntrepriseStatsDto;
+import com.projet.lalana.dto.ManagerStatsDto.ProblemeSampleDto;
+import com.projet.lalana.model.ProblemeStats;
+import com.projet.lalana.repository.EntrepriseRepository;
+import com.projet.lalana.repository.ProblemeStatsRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Statistiques manager calculees en SQL : un nombre fixe de requetes agregees,
+ * quel que soit le nombre de problemes. Quand les statistiques materialisees sont disponibles
+ * (ProblemeStatsStore), compteurs et durees sont lus par cle primaire au lieu d'etre recalcules ;
+ * sinon percentiles et histogramme sont recalcules depuis probleme_history, comme le reste.
+ *
+ * La date de passage a un statut est la premiere entree de probleme_history pour ce statut ;
+ * les durees sont en jours entiers, comme ChronoUnit.DAYS.between.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProblemeStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProblemeStatsService.class);
+
+    /** Premiere date de chaque statut (10, 20, 30) par probleme. */
+    static final String FIRST_TRANSITIONS = """
+            SELECT ph.probleme_id,
+                   MIN(ph.changed_at) FILTER (WHERE hs.valeur = 10) AS nouveau_at,
+                   MIN(ph.changed_at) FILTER (WHERE hs.valeur = 20) AS en_cours_at,
+                   MIN(ph.changed_at) FILTER (WHERE hs.valeur = 30) AS termine_at
+            FROM probleme_history ph
+            JOIN probleme_status hs ON hs.id = ph.status_id
+            """;
+
+    private static final String COUNTS_SQL = """
+            SELECT COUNT(*) FILTER (WHERE ps.valeur = 10) AS nouveau,
+                   COUNT(*) FILTER (WHERE ps.valeur = 20) AS en_cours,
+                   COUNT(*) FILTER (WHERE ps.valeur = 30) AS termine,
+                   COUNT(*) AS total
+            FROM probleme p
+            LEFT JOIN probleme_status ps ON ps.id = p.status_id
+            """;
+
+    private static final String DURATIONS_SQL = "WITH firsts AS (" + FIRST_TRANSITIONS
+            + " GROUP BY ph.probleme_id), durations AS ("
+            + """
+            SELECT TRUNC(EXTRACT(EPOCH FROM (f.en_cours_at - f.nouveau_at)) / 86400) AS nouveau_to_en_cours,
+                   TRUNC(EXTRACT(EPOCH FROM (f.termine_at - f.en_cours_at)) / 86400) AS en_cours_to_termine,
+                   TRUNC(EXTRACT(EPOCH FROM (f.termine_at - f.nouveau_at)) / 86400) AS total
+            FROM probleme p
+            JOIN firsts f ON f.probleme_id = p.id)
+            SELECT AVG(nouveau_to_en_cours) AS avg_nouveau_to_en_cours,
+                   AVG(en_cours_to_termine) AS avg_en_cours_to_termine,
+                   AVG(total) AS avg_total,
+                   MIN(total) AS min_total,
+                   MAX(total) AS max_total
+            FROM durations
+            """;
+
+    private static final String SAMPLES_SQL = """
+            WITH page AS (
+                SELECT p.id, p.entreprise_id, p.status_id, p.signalement_id
+                FROM probleme p
+                ORDER BY p.id
+                LIMIT ? OFFSET ?)
+            SELECT page.id,
+                   e.nom AS entreprise_name,
+                   COALESCE(ps.valeur, 0) AS status_valeur,
+                   COALESCE(pt.localisation, 'Localisation inconnue') AS localisation,
+                   f.nouveau_at, f.en_cours_at, f.termine_at
+            FROM page
+            LEFT JOIN entreprise e ON e.id = page.entreprise_id
+            LEFT JOIN probleme_status ps ON ps.id = page.status_id
+            LEFT JOIN signalement s ON s.id = page.signalement_id
+            LEFT JOIN points pt ON pt.id = s.point_id
+            LEFT JOIN LATERAL (
+            """ + FIRST_TRANSITIONS + """
+                WHERE ph.probleme_id = page.id
+                GROUP BY ph.probleme_id) f ON TRUE
+            ORDER BY page.id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProblemeStatsStore problemeStatsStore;
+    private final ProblemeStatsRepository problemeStatsRepository;
+    private final EntrepriseRepository entrepriseRepository;
+    private final ProblemeDurationStore problemeDurationStore;
+
+    @Value("${stats.samples.page-size:100}")
+    private int defaultPageSize;
+
+    @Value("${stats.samples.max-page-size:1000}")
+    private int maxPageSize;
+
+    /**
+     * Compteurs, moyennes, min/max et une page d'echantillons (tries par id).
+     */
+    public ManagerStatsDto compute(int page, Integer size) {
+        int pageSize = Math.max(1, Math.min(size != null ? size : defaultPageSize, maxPageSize));
+        int pageIndex = Math.max(0, page);
+        long start = System.currentTimeMillis();
+
+        Map<String, Integer> counts;
+        Map<String, Double> averages;
+        Map<String, Integer> minMax;
+        List<EntrepriseStatsDto> entreprises = new ArrayList<>();
+        List<Map<String, Object>> histogram = new ArrayList<>();
+        Map<String, Map<String, Double>> percentiles = new HashMap<>();
+        Optional<ProblemeStats> global = problemeStatsStore.isEnabled() ? problemeStatsStore.findGlobal()
+                : Optional.empty();
+        if (global.isPresent()) {
+            counts = counts(global.get());
+            averages = averages(global.get());
+            minMax = minMax(global.get());
+            entreprises = entrepriseBreakdown();
+        } else {
+            counts = jdbcTemplate.queryForObject(COUNTS_SQL, (rs, i) -> {
+                Map<String, Integer> out = new HashMap<>();
+                out.put("nouveau", rs.getInt("nouveau"));
+                out.put("enCours", rs.getInt("en_cours"));
+                out.put("termine", rs.getInt("termine"));
+                out.put("total", rs.getInt("total"));
+                return out;
+            });
+            Map<String, Double> avg = new HashMap<>();
+            Map<String, Integer> mm = new HashMap<>();
+            jdbcTemplate.query(DURATIONS_SQL, rs -> {
+                avg.put("nouveauToEnCours", rs.getDouble("avg_nouveau_to_en_cours"));
+                avg.put("enCoursToTermine", rs.getDouble("avg_en_cours_to_termine"));
+                avg.put("totalNouveauToTermine", rs.getDouble("avg_total"));
+                mm.put("min", rs.getInt("min_total"));
+                mm.put("max", rs.getInt("max_total"));
+            });
+            averages = avg;
+            minMax = mm;
+        }
+        List<DurationStatsDto> durations = global.isPresent() ? problemeDurationStore.durations(null, null, null)
+                : problemeDurationStore.durationsFromHistory(null, null, null);
+        for (DurationStatsDto duration : durations) {
+            percentiles.put(duration.getMetric(), duration.getPercentiles());
+            if (ProblemeDurationStore.TOTAL.equals(duration.getMetric())) {
+                histogram = duration.getHistogram();
+            }
+        }
+
+        List<ProblemeSampleDto> samples = jdbcTemplate.query(SAMPLES_SQL, (rs, i) -> new ProblemeSampleDto(
+                rs.getInt("id"),
+                rs.getString("entreprise_name"),
+                rs.getInt("status_valeur"),
+                rs.getString("localisation"),
+                rs.getObject("nouveau_at", LocalDateTime.class),
+                rs.getObject("en_cours_at", LocalDateTime.class),
+                rs.getObject("termine_at", LocalDateTime.class)), pageSize, (long) pageIndex * pageSize);
+
+        logger.info("[STATS] Statistiques manager calculées en {} ms (page {} de {} échantillon(s))",
+                System.currentTimeMillis() - start, pageIndex, pageSize);
+        return new ManagerStatsDto(counts, averages, minMax, histogram, samples, pageIndex, pageSize,
+                entreprises, percentiles);
+    }
+
+    /**
+     * Distributions horaires des durees de transition, par entreprise et plage de mois (yyyy-MM).
+     * Lues dans les esquisses materialisees, ou recalculees depuis probleme_history quand elles ne
+     * sont pas tenues a jour (statistiques materialisees desactivees).
+     */
+    public List<DurationStatsDto> durations(Integer entrepriseId, String from, String to) {
+        return problemeStatsStore.isEnabled() ? problemeDurationStore.durations(entrepriseId, from, to)
+                : problemeDurationStore.durationsFromHistory(entrepriseId, from, to);
+    }
+
+    private List<EntrepriseStatsDto> entrepriseBreakdown() {
+        List<ProblemeStats> rows = problemeStatsRepository.findByEntrepriseIdIsNotNullOrderByEntrepriseId();
+        Map<Integer, String> names = new HashMap<>();
+        entrepriseRepository.findAllById(rows.stream().map(ProblemeStats::getEntrepriseId).toList())
+                .forEach(e -> names.put(e.getId(), e.getNom()));
+        List<EntrepriseStatsDto> out = new ArrayList<>(rows.size());
+        for (ProblemeStats row : rows) {
+            out.add(new EntrepriseStatsDto(row.getEntrepriseId(), names.get(row.getEntrepriseId()), counts(row),
+                    averages(row), minMax(row)));
+        }
+        return out;
+    }
+
+    private static Map<String, Integer> counts(ProblemeStats stats) {
+        Map<String, Integer> out = new HashMap<>();
+        out.put("nouveau", (int) stats.getNouveauCount());
+        out.put("enCours", (int) stats.getEnCoursCount());
+        out.put("termine", (int) stats.getTermineCount());
+        out.put("total", (int) stats.getTotalCount());
+        return out;
+    }
+
+    private static Map<String, Double> averages(ProblemeStats stats) {
+        Map<String, Double> out = new HashMap<>();
+        out.put("nouveauToEnCours", average(stats.getNouveauToEnCoursSum(), stats.getNouveauToEnCoursCount()));
+        out.put("enCoursToTermine", average(stats.getEnCoursToTermineSum(), stats.getEnCoursToTermineCount()));
+        out.put("totalNouveauToTermine", average(stats.getTotalSum(), stats.getTotalDurationCount()));
+        return out;
+    }
+
+    private static Map<String, Integer> minMax(ProblemeStats stats) {
+        Map<String, Integer> out = new HashMap<>();
+        out.put("min", stats.getTotalMin() != null ? stats.getTotalMin() : 0);
+        out.put("max", stats.getTotalMax() != null ? stats.getTotalMax() : 0);
+        return out;
+    }
+
+    private static double average(long sum, long count) {
+        return count == 0 ? 0.0 : (double) sum / count;
+    }
+}
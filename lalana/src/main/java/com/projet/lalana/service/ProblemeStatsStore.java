@@ -0,0 +1,256 @@
+package com.projet.lalana.service;
+
+import com.projet.lalana.model.ProblemeStats;
+import com.projet.lalana.repository.ProblemeStatsRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Statistiques manager materialisees (tables probleme_stats et probleme_transition).
+ *
+ * Chaque ecriture d'un ProblemeHistory appelle {@link #recordTransition} dans la meme transaction :
+ * la ligne probleme_transition du probleme est verrouillee, les compteurs de statut et, si une
+ * premiere date vient d'etre connue, les durees de transition sont ajoutes aux lignes GLOBAL et
+ * ENTREPRISE:{id}, et les distributions horaires a ProblemeDurationStore.
+ * {@link #rebuild} recalcule tout depuis probleme_history. Avec stats.materialized.enabled=false, ni
+ * les compteurs ni les esquisses ne sont tenus a jour : ProblemeStatsService recalcule alors tout,
+ * distributions comprises, depuis probleme_history.
+ */
+@Service
+@RequiredArgsConstructor
+public class ProblemeStatsStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProblemeStatsStore.class);
+
+    private static final String DAYS_NT = "TRUNC(EXTRACT(EPOCH FROM (en_cours_at - nouveau_at)) / 86400)::int";
+    private static final String DAYS_ET = "TRUNC(EXTRACT(EPOCH FROM (termine_at - en_cours_at)) / 86400)::int";
+    private static final String DAYS_TOTAL = "TRUNC(EXTRACT(EPOCH FROM (termine_at - nouveau_at)) / 86400)::int";
+
+    private static final String INSERT_STATS_ROW = """
+            INSERT INTO probleme_stats (stats_key, entreprise_id, nouveau_count, en_cours_count, termine_count,
+                total_count, nouveau_to_en_cours_sum, nouveau_to_en_cours_count, en_cours_to_termine_sum,
+                en_cours_to_termine_count, total_sum, total_duration_count, updated_at)
+            VALUES (?, ?, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, NOW())
+            ON CONFLICT (stats_key) DO NOTHING
+            """;
+
+    private static final String APPLY_DELTA = """
+            UPDATE probleme_stats SET
+                nouveau_count = nouveau_count + ?, en_cours_count = en_cours_count + ?,
+                termine_count = termine_count + ?, total_count = total_count + ?,
+                nouveau_to_en_cours_sum = nouveau_to_en_cours_sum + COALESCE(CAST(? AS INTEGER), 0),
+                nouveau_to_en_cours_count = nouveau_to_en_cours_count + ?,
+                nouveau_to_en_cours_min = LEAST(nouveau_to_en_cours_min, CAST(? AS INTEGER)),
+                nouveau_to_en_cours_max = GREATEST(nouveau_to_en_cours_max, CAST(? AS INTEGER)),
+                en_cours_to_termine_sum = en_cours_to_termine_sum + COALESCE(CAST(? AS INTEGER), 0),
+                en_cours_to_termine_count = en_cours_to_termine_count + ?,
+                en_cours_to_termine_min = LEAST(en_cours_to_termine_min, CAST(? AS INTEGER)),
+                en_cours_to_termine_max = GREATEST(en_cours_to_termine_max, CAST(? AS INTEGER)),
+                total_sum = total_sum + COALESCE(CAST(? AS INTEGER), 0),
+                total_duration_count = total_duration_count + ?,
+                total_min = LEAST(total_min, CAST(? AS INTEGER)),
+                total_max = GREATEST(total_max, CAST(? AS INTEGER)),
+                updated_at = NOW()
+            WHERE stats_key = ?
+            """;
+
+    private static final String REBUILD_TRANSITIONS = "INSERT INTO probleme_transition (probleme_id, entreprise_id, "
+            + "status_valeur, nouveau_at, en_cours_at, termine_at) "
+            + "SELECT p.id, p.entreprise_id, ps.valeur, f.nouveau_at, f.en_cours_at, f.termine_at "
+            + "FROM probleme p LEFT JOIN probleme_status ps ON ps.id = p.status_id "
+            + "LEFT JOIN (" + ProblemeStatsService.FIRST_TRANSITIONS + " GROUP BY ph.probleme_id) f "
+            + "ON f.probleme_id = p.id";
+
+    private static final String REBUILD_STATS = """
+            INSERT INTO probleme_stats (stats_key, entreprise_id, nouveau_count, en_cours_count, termine_count,
+                total_count, nouveau_to_en_cours_sum, nouveau_to_en_cours_count, nouveau_to_en_cours_min,
+                nouveau_to_en_cours_max, en_cours_to_termine_sum, en_cours_to_termine_count, en_cours_to_termine_min,
+                en_cours_to_termine_max, total_sum, total_duration_count, total_min, total_max, updated_at)
+            SELECT CASE WHEN GROUPING(entreprise_id) = 1 THEN 'GLOBAL' ELSE 'ENTREPRISE:' || entreprise_id END,
+                   CASE WHEN GROUPING(entreprise_id) = 1 THEN NULL ELSE entreprise_id END,
+                   COUNT(*) FILTER (WHERE status_valeur = 10), COUNT(*) FILTER (WHERE status_valeur = 20),
+                   COUNT(*) FILTER (WHERE status_valeur = 30), COUNT(*),
+                   COALESCE(SUM(nt), 0), COUNT(nt), MIN(nt), MAX(nt),
+                   COALESCE(SUM(et), 0), COUNT(et), MIN(et), MAX(et),
+                   COALESCE(SUM(total), 0), COUNT(total), MIN(total), MAX(total),
+                   NOW()
+            FROM (SELECT entreprise_id, status_valeur,
+            """ + DAYS_NT + " AS nt, " + DAYS_ET + " AS et, " + DAYS_TOTAL + " AS total" + """
+                  FROM probleme_transition) d
+            GROUP BY GROUPING SETS ((), (entreprise_id))
+            HAVING GROUPING(entreprise_id) = 1 OR entreprise_id IS NOT NULL
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProblemeStatsRepository problemeStatsRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final ProblemeDurationStore problemeDurationStore;
+
+    @Value("${stats.materialized.enabled:true}")
+    private boolean enabled;
+
+    private record Transition(Integer entrepriseId, Integer statusValeur, LocalDateTime nouveauAt,
+            LocalDateTime enCoursAt, LocalDateTime termineAt) {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Backfill au demarrage quand les tables sont vides (premier deploiement).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Optional<ProblemeStats> global = findGlobal();
+            boolean sketchesMissing = global.isPresent() && global.get().getNouveauToEnCoursCount()
+                    + global.get().getEnCoursToTermineCount() > 0 && problemeDurationStore.isEmpty();
+            if (global.isEmpty() || sketchesMissing) {
+                rebuild();
+            }
+        } catch (Exception e) {
+            logger.error("[STATS] Reconstruction initiale impossible: {}", e.getMessage());
+        }
+    }
+
+    public Optional<ProblemeStats> findGlobal() {
+        return problemeStatsRepository.findById(ProblemeStats.GLOBAL_KEY);
+    }
+
+    /**
+     * A appeler dans la transaction qui ecrit le ProblemeHistory du probleme.
+     */
+    public void recordTransition(Integer problemeId, Integer entrepriseId, Integer valeur, LocalDateTime changedAt) {
+        if (!enabled || problemeId == null || valeur == null) {
+            return;
+        }
+        jdbcTemplate.update("INSERT INTO probleme_transition (probleme_id, entreprise_id) VALUES (?, ?) "
+                + "ON CONFLICT (probleme_id) DO NOTHING", problemeId, entrepriseId);
+        Transition before = jdbcTemplate.queryForObject("SELECT entreprise_id, status_valeur, nouveau_at, "
+                + "en_cours_at, termine_at FROM probleme_transition WHERE probleme_id = ? FOR UPDATE",
+                (rs, i) -> new Transition(
+                        (Integer) rs.getObject("entreprise_id"),
+                        (Integer) rs.getObject("status_valeur"),
+                        rs.getObject("nouveau_at", LocalDateTime.class),
+                        rs.getObject("en_cours_at", LocalDateTime.class),
+                        rs.getObject("termine_at", LocalDateTime.class)),
+                problemeId);
+
+        Transition after = new Transition(before.entrepriseId(), valeur,
+                valeur == 10 && before.nouveauAt() == null ? changedAt : before.nouveauAt(),
+                valeur == 20 && before.enCoursAt() == null ? changedAt : before.enCoursAt(),
+                valeur == 30 && before.termineAt() == null ? changedAt : before.termineAt());
+
+        long[] counts = new long[4];
+        if (before.statusValeur() == null) {
+            counts[3] = 1;
+        } else {
+            addCount(counts, before.statusValeur(), -1);
+        }
+        addCount(counts, valeur, 1);
+
+        Integer nt = newDuration(before.nouveauAt(), before.enCoursAt(), after.nouveauAt(), after.enCoursAt());
+        Integer et = newDuration(before.enCoursAt(), before.termineAt(), after.enCoursAt(), after.termineAt());
+        Integer total = newDuration(before.nouveauAt(), before.termineAt(), after.nouveauAt(), after.termineAt());
+
+        jdbcTemplate.update("UPDATE probleme_transition SET status_valeur = ?, nouveau_at = ?, en_cours_at = ?, "
+                + "termine_at = ? WHERE probleme_id = ?", valeur, timestamp(after.nouveauAt()),
+                timestamp(after.enCoursAt()), timestamp(after.termineAt()), problemeId);
+
+        applyDelta(ProblemeStats.GLOBAL_KEY, null, counts, nt, et, total);
+        if (before.entrepriseId() != null) {
+            applyDelta(ProblemeStats.entrepriseKey(before.entrepriseId()), before.entrepriseId(), counts, nt, et,
+                    total);
+        }
+
+        List<ProblemeDurationStore.Sample> samples = new ArrayList<>(3);
+        if (nt != null) {
+            samples.add(new ProblemeDurationStore.Sample(ProblemeDurationStore.NOUVEAU_TO_EN_COURS,
+                    after.nouveauAt(), after.enCoursAt()));
+        }
+        if (et != null) {
+            samples.add(new ProblemeDurationStore.Sample(ProblemeDurationStore.EN_COURS_TO_TERMINE,
+                    after.enCoursAt(), after.termineAt()));
+        }
+        if (total != null) {
+            samples.add(new ProblemeDurationStore.Sample(ProblemeDurationStore.TOTAL, after.nouveauAt(),
+                    after.termineAt()));
+        }
+        problemeDurationStore.record(before.entrepriseId(), samples);
+    }
+
+    /**
+     * Recalcule probleme_transition et probleme_stats depuis probleme et probleme_history.
+     * Les mises a jour incrementales concurrentes attendent la fin de la reconstruction.
+     */
+    public int rebuild() {
+        long start = System.currentTimeMillis();
+        Integer problemes = new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.execute(
+                    "LOCK TABLE probleme_transition, probleme_stats, probleme_duration_sketch IN EXCLUSIVE MODE");
+            jdbcTemplate.update("DELETE FROM probleme_transition");
+            jdbcTemplate.update("DELETE FROM probleme_stats");
+            int count = jdbcTemplate.update(REBUILD_TRANSITIONS);
+            jdbcTemplate.update(REBUILD_STATS);
+            problemeDurationStore.rebuild();
+            return count;
+        });
+        logger.info("[STATS] Statistiques reconstruites : {} problème(s) en {} ms", problemes,
+                System.currentTimeMillis() - start);
+        return problemes != null ? problemes : 0;
+    }
+
+    private void applyDelta(String key, Integer entrepriseId, long[] counts, Integer nt, Integer et,
+            Integer total) {
+        jdbcTemplate.update(INSERT_STATS_ROW, key, entrepriseId);
+        jdbcTemplate.update(APPLY_DELTA, counts[0], counts[1], counts[2], counts[3],
+                nt, nt != null ? 1 : 0, nt, nt,
+                et, et != null ? 1 : 0, et, et,
+                total, total != null ? 1 : 0, total, total,
+                key);
+    }
+
+    private static void addCount(long[] counts, int valeur, int delta) {
+        switch (valeur) {
+            case 10 -> counts[0] += delta;
+            case 20 -> counts[1] += delta;
+            case 30 -> counts[2] += delta;
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Duree en jours si elle vient d'etre definie par cette transition, null sinon.
+     */
+    private static Integer newDuration(LocalDateTime fromBefore, LocalDateTime toBefore, LocalDateTime from,
+            LocalDateTime to) {
+        if (from == null || to == null || (fromBefore != null && toBefore != null)) {
+            return null;
+        }
+        return (int) ChronoUnit.DAYS.between(from, to);
+    }
+
+    private static Timestamp timestamp(LocalDateTime value) {
+        return value != null ? Timestamp.valueOf(value) : null;
+    }
+}
@@ -0,0 +1,218 @@
+package com.projet.lalana.service;
+
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.cloud.FirestoreClient;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ingestion temps reel des nouveaux signalements (opt-in : sync.listener.enabled=true).
+ *
+ * Un snapshot listener sur signalementAdd note les documents ajoutes/modifies ; un drain
+ * periodique les importe par micro-lots via {@link SignalementService#importDocuments(List)}
+ * une fois qu'ils n'ont plus bouge depuis sync.listener.settle-ms (le mobile ajoute les photos
+ * apres la creation du document). Au-dela de sync.listener.max-pending documents en attente les
+ * evenements sont ignores et un import complet de rattrapage est lance une fois la file videe.
+ * En cas d'erreur du flux, l'ecoute est re-enregistree avec un backoff exponentiel.
+ *
+ * Un micro-lot en echec est reprogramme avec un backoff exponentiel par document ; apres
+ * sync.listener.max-attempts echecs le document sort de la file (il reste dans signalementAdd et
+ * sera repris par l'import periodique). Les evenements du listener sont traites sur leur propre
+ * thread pour ne pas attendre derriere un import en cours.
+ */
+@Service
+@RequiredArgsConstructor
+public class SignalementListenerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SignalementListenerService.class);
+    private static final long MAX_RECONNECT_DELAY_MS = 60_000;
+    private static final long MAX_RETRY_DELAY_MS = 300_000;
+
+    private final SignalementService signalementService;
+
+    @Value("${sync.listener.enabled:false}")
+    private boolean enabled;
+
+    @Value("${sync.listener.batch-size:50}")
+    private int batchSize;
+
+    @Value("${sync.listener.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${sync.listener.settle-ms:5000}")
+    private long settleMs;
+
+    @Value("${sync.listener.max-pending:1000}")
+    private int maxPending;
+
+    @Value("${sync.listener.max-attempts:5}")
+    private int maxAttempts;
+
+    /** docId -> instant (ms) a partir duquel le document peut etre importe. */
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    /** docId -> nombre d'imports en echec. */
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+    private final AtomicBoolean overflow = new AtomicBoolean(false);
+    /** Drain et imports (bloquants). */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new CustomizableThreadFactory("signalement-import-"));
+    /** Evenements du snapshot listener et reconnexions. */
+    private final ScheduledExecutorService listenerExecutor = Executors.newSingleThreadScheduledExecutor(
+            new CustomizableThreadFactory("signalement-listener-"));
+
+    private volatile ListenerRegistration registration;
+    private volatile long reconnectDelayMs = 1000;
+    private volatile boolean stopped;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (FirebaseApp.getApps().isEmpty()) {
+            logger.warn("[LISTENER] Firebase non initialisé, écoute de signalementAdd désactivée");
+            return;
+        }
+        register();
+        scheduler.scheduleWithFixedDelay(this::drain, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("[LISTENER] Écoute temps réel de signalementAdd démarrée (lots de {}, délai de stabilisation {} ms)",
+                batchSize, settleMs);
+    }
+
+    private void register() {
+        if (stopped) {
+            return;
+        }
+        try {
+            registration = FirestoreClient.getFirestore().collection("signalementAdd")
+                    .addSnapshotListener(listenerExecutor, (snapshot, error) -> {
+                        if (error != null) {
+                            logger.error("[LISTENER] Erreur du flux signalementAdd: {}", error.getMessage());
+                            scheduleReconnect();
+                            return;
+                        }
+                        reconnectDelayMs = 1000;
+                        if (snapshot == null) {
+                            return;
+                        }
+                        long readyAt = System.currentTimeMillis() + settleMs;
+                        for (DocumentChange change : snapshot.getDocumentChanges()) {
+                            if (change.getType() == DocumentChange.Type.REMOVED) {
+                                pending.remove(change.getDocument().getId());
+                                attempts.remove(change.getDocument().getId());
+                                continue;
+                            }
+                            String docId = change.getDocument().getId();
+                            if (pending.size() >= maxPending && !pending.containsKey(docId)) {
+                                overflow.set(true);
+                                continue;
+                            }
+                            pending.put(docId, readyAt);
+                        }
+                    });
+        } catch (Exception e) {
+            logger.error("[LISTENER] Impossible d'enregistrer l'écoute de signalementAdd: {}", e.getMessage());
+            scheduleReconnect();
+        }
+    }
+
+    private void scheduleReconnect() {
+        ListenerRegistration current = registration;
+        registration = null;
+        if (current != null) {
+            current.remove();
+        }
+        if (stopped) {
+            return;
+        }
+        long delay = reconnectDelayMs;
+        reconnectDelayMs = Math.min(reconnectDelayMs * 2, MAX_RECONNECT_DELAY_MS);
+        logger.info("[LISTENER] Reconnexion dans {} ms", delay);
+        listenerExecutor.schedule(this::register, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Importe les documents stabilises par lots de sync.listener.batch-size ; un lot en echec
+     * n'empeche pas les suivants.
+     */
+    private void drain() {
+        long now = System.currentTimeMillis();
+        List<String> ready = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : pending.entrySet()) {
+            if (entry.getValue() <= now) {
+                ready.add(entry.getKey());
+            }
+        }
+        for (int start = 0; start < ready.size(); start += batchSize) {
+            List<String> batch = ready.subList(start, Math.min(start + batchSize, ready.size()));
+            try {
+                int imported = signalementService.importDocuments(batch);
+                batch.forEach(pending::remove);
+                batch.forEach(attempts::remove);
+                logger.info("[LISTENER] Micro-lot importé: {} signalement(s) sur {} document(s)", imported,
+                        batch.size());
+            } catch (Exception e) {
+                logger.error("[LISTENER] Erreur lors de l'import d'un micro-lot de {} document(s): {}", batch.size(),
+                        e.getMessage(), e);
+                reschedule(batch);
+            }
+        }
+        try {
+            if (pending.isEmpty() && overflow.compareAndSet(true, false)) {
+                logger.warn("[LISTENER] File saturée, import de rattrapage de signalementAdd");
+                signalementService.synchronisation();
+            }
+        } catch (Exception e) {
+            logger.error("[LISTENER] Erreur lors de l'import de rattrapage: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reprogramme les documents d'un lot en echec avec un backoff exponentiel, ou les retire de la
+     * file apres sync.listener.max-attempts echecs.
+     */
+    private void reschedule(List<String> batch) {
+        long now = System.currentTimeMillis();
+        for (String docId : batch) {
+            int failures = attempts.merge(docId, 1, Integer::sum);
+            if (failures >= maxAttempts) {
+                pending.remove(docId);
+                attempts.remove(docId);
+                logger.warn("[LISTENER] Document {} abandonné après {} échec(s), laissé à l'import périodique", docId,
+                        failures);
+            } else {
+                long delay = Math.min(settleMs << Math.min(failures, 20), MAX_RETRY_DELAY_MS);
+                pending.replace(docId, now + delay);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        ListenerRegistration current = registration;
+        if (current != null) {
+            current.remove();
+        }
+        listenerExecutor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+}
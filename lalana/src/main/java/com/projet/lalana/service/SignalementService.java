@@ -2,6 +2,7 @@
 package com.projet.lalana.service;
 
 import com.projet.lalana.model.Entreprise;
+import com.projet.lalana.model.ImageDownloadStatus;
 import com.projet.lalana.model.Probleme;
 import com.projet.lalana.model.ProblemeHistory;
 import com.projet.lalana.model.ProblemeStatus;
@@ -17,8 +18,12 @@ import com.projet.lalana.repository.ProblemeHistoryRepository;
 import com.projet.lalana.repository.ProblemeRepository;
 import com.projet.lalana.repository.ProblemeStatusRepository;
 import com.projet.lalana.repository.ConfigRepository;
+import com.projet.lalana.repository.SyncCursorRepository;
 
+import com.projet.lalana.dto.CursorPage;
+import com.projet.lalana.dto.ListFilter;
 import com.projet.lalana.dto.RapportTech;
+import com.projet.lalana.repository.ListSpecifications;
 import com.projet.lalana.dto.SignalementImageDTO;
 import com.projet.lalana.model.SignalementImage;
 import com.projet.lalana.repository.SignalementImageRepository;
@@ -28,10 +33,16 @@ import com.google.cloud.firestore.DocumentSnapshot;
 import com.google.cloud.firestore.GeoPoint;
 import com.projet.lalana.dto.SignalementDto;
 import com.projet.lalana.model.Point;
+import com.projet.lalana.model.SyncCursor;
 import com.projet.lalana.repository.PointRepository;
 import com.projet.lalana.repository.UserRepository;
 
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import lombok.RequiredArgsConstructor;
 
 import org.slf4j.Logger;
@@ -45,13 +56,16 @@ import java.time.Instant;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Optional;
-import java.io.InputStream;
-import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.net.URL;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import sun.misc.Signal;
 
@@ -73,13 +87,53 @@ public class SignalementService {
     private final SignalementImageRepository signalementImageRepository;
     private final ProblemeRepository problemeRepository;
     private final ProblemeHistoryRepository problemeHistoryRepository;
+    private final ProblemeStatsStore problemeStatsStore;
     private final ProblemeStatusRepository problemeStatusRepository;
     private final EntrepriseRepository entrepriseRepository;
     private final ConfigRepository configRepository;
+    private final SyncCursorRepository syncCursorRepository;
+    private final ImageDownloadService imageDownloadService;
+    private final PlatformTransactionManager transactionManager;
+
+    /** Serialise les imports (synchronisation manuelle et ecoute temps reel). */
+    private final ReentrantLock importLock = new ReentrantLock();
+
+    /** Nom du curseur d'import de la collection signalementAdd dans sync_cursor. */
+    private static final String SIGNALEMENT_ADD_CURSOR = "signalementAdd";
+
+    /**
+     * Documents signalementAdd deja passes par le curseur mais non importes (lot en erreur,
+     * utilisateur inconnu) : retentes a chaque import incremental jusqu'a leur import.
+     */
+    private final Set<String> retryDocIds = ConcurrentHashMap.newKeySet();
+
+    /** Dernier parcours complet de reconciliation de signalementAdd (ms epoch, 0 = jamais). */
+    private volatile long signalementAddReconciledAt;
 
     @Value("${uploads.base-dir:src/main/resources/static/images}")
     private String uploadsBaseDir;
 
+    @Value("${sync.import.incremental:true}")
+    private boolean importIncremental;
+
+    @Value("${sync.import.reconcile-interval-minutes:60}")
+    private long importReconcileIntervalMinutes;
+
+    @Value("${sync.import.page-size:200}")
+    private int importPageSize;
+
+    @Value("${sync.import.bulk:true}")
+    private boolean importBulk;
+
+    @Value("${sync.import.chunk-size:500}")
+    private int importChunkSize;
+
+    @Value("${list.page.default-size:50}")
+    private int listDefaultSize;
+
+    @Value("${list.page.max-size:200}")
+    private int listMaxSize;
+
     @PostConstruct
     public void initUploadsBaseDir() {
         try {
@@ -100,6 +154,32 @@ public class SignalementService {
         }
     }
 
+    /**
+     * Page de signalements par curseur (id decroissant) avec filtres optionnels : une requete
+     * LIMIT sur les index, plus une pour les images de la page, quelle que soit la taille de la table.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Signalement> getPage(ListFilter filter, boolean nonResolus) {
+        try {
+            int limit = Math.max(1, Math.min(filter.getLimit() != null ? filter.getLimit() : listDefaultSize,
+                    listMaxSize));
+            List<Signalement> rows = signalementRepository.findBy(ListSpecifications.signalements(filter, nonResolus),
+                    q -> q.sortBy(Sort.by(Sort.Direction.DESC, "id")).limit(limit + 1).all());
+            Integer nextCursor = null;
+            if (rows.size() > limit) {
+                rows = new ArrayList<>(rows.subList(0, limit));
+                nextCursor = rows.get(limit - 1).getId();
+            }
+            if (!rows.isEmpty()) {
+                signalementRepository.fetchImages(rows.stream().map(Signalement::getId).toList());
+            }
+            return new CursorPage<>(rows, nextCursor, limit);
+        } catch (Exception e) {
+            logger.error("Erreur lors de getPage signalements", e);
+            throw new ServiceException("Erreur lors de la récupération des signalements", e);
+        }
+    }
+
     public Optional<Signalement> getById(Integer id) {
         try {
             return signalementRepository.findById(id);
@@ -322,175 +402,446 @@ public class SignalementService {
         }
     }
 
+    /**
+     * Importe les signalements de la collection Firestore signalementAdd dans la base.
+     * Mode incremental (sync.import.incremental=true) : lecture paginee apres le curseur
+     * persistant (mode par defaut). Sinon lecture complete de la collection. Dans les deux cas
+     * seuls les documents effectivement importes sont supprimes de Firestore.
+     */
     public int synchronisation() {
+        importLock.lock();
+        try {
+            return importIncremental ? synchronisationIncrementale() : synchronisationComplete();
+        } finally {
+            importLock.unlock();
+        }
+    }
+
+    /**
+     * Importe exactement les documents signalementAdd indiques (micro-lot de l'ecoute temps reel).
+     * Les documents sont relus en un seul getAll : ceux deja importes et supprimes entre-temps
+     * sont ignores, et les photos ajoutees apres la creation du document sont prises en compte.
+     * Seuls les documents importes sont supprimes de Firestore.
+     */
+    public int importDocuments(List<String> docIds) {
+        importLock.lock();
+        try {
+            SignalementStatus status = statusSignalementRepository.findByValeur(10)
+                    .orElseThrow(() -> new ServiceException("Statut initial du signalement non trouvé"));
+            LocalDateTime now = LocalDateTime.now();
+            List<String> importedDocIds = importDocs(firestoreService.fetchDocuments("signalementAdd", docIds), status,
+                    now);
+            firestoreService.deleteDocuments("signalementAdd", importedDocIds);
+            return importedDocIds.size();
+        } catch (ServiceException se) {
+            throw se;
+        } catch (Exception e) {
+            logger.error("Erreur import des documents Firestore {}", docIds, e);
+            throw new ServiceException("Erreur lors de l'import des documents Firestore", e);
+        } finally {
+            importLock.unlock();
+        }
+    }
+
+    /**
+     * Import complet : lecture de toute la collection signalementAdd puis suppression des seuls
+     * documents importes. Un lot en erreur ou un document dont l'utilisateur est inconnu reste
+     * dans Firestore et sera relu au prochain import.
+     */
+    private int synchronisationComplete() {
+        try {
+            SignalementStatus status = statusSignalementRepository.findByValeur(10)
+                    .orElseThrow(() -> new ServiceException("Statut initial du signalement non trouvé"));
+            List<String> importedDocIds = importDocs(firestoreService.fetchAllSignalementDocuments(), status,
+                    LocalDateTime.now());
+            int deleted = firestoreService.deleteDocuments("signalementAdd", importedDocIds);
+            logger.info("Import complet: {} document(s) importe(s), {} supprime(s)", importedDocIds.size(), deleted);
+            return importedDocIds.size();
+        } catch (ServiceException se) {
+            throw se;
+        } catch (Exception e) {
+            logger.error("Erreur synchronization Firestore", e);
+            throw new ServiceException("Erreur lors de la synchronisation depuis Firestore", e);
+        }
+    }
+
+    /**
+     * Import incremental de signalementAdd : pages de sync.import.page-size documents tries par
+     * (updatedAt, id), a partir du curseur persiste dans sync_cursor. Apres chaque page le curseur
+     * est avance puis seuls les documents effectivement importes sont supprimes ; un document cree
+     * pendant l'import n'est donc jamais supprime sans avoir ete importe. Les documents en erreur
+     * restent dans Firestore et sont notes dans retryDocIds pour etre retentes au prochain cycle.
+     */
+    private int synchronisationIncrementale() {
         int imported = 0;
         LocalDateTime now = LocalDateTime.now();
         try {
-            // Use the DTO list as source of truth for import (no change to DTO class)
-            List<SignalementDto> dtos = getAllSignalementsFromFirestore();
             SignalementStatus status = statusSignalementRepository.findByValeur(10)
                     .orElseThrow(() -> new ServiceException("Statut initial du signalement non trouvé"));
-            for (SignalementDto dto : dtos) {
+            SyncCursor cursor = syncCursorRepository.findById(SIGNALEMENT_ADD_CURSOR)
+                    .orElseGet(() -> new SyncCursor(SIGNALEMENT_ADD_CURSOR));
+            int pageSize = Math.max(1, importPageSize);
 
-                try {
-                    // Build Signalement from DTO
-                    Signalement s = new Signalement();
-                    // getUser
-                    User user = null;
-                    if (dto.getUserToken() != null) {
-                        user = userRepository.findByFirebaseToken(dto.getUserToken())
-                                .orElseThrow(() -> new ServiceException(
-                                        "Utilisateur non trouvé pour le token: " + dto.getUserToken()));
-                    }
-                    if (user == null && dto.getUserId() != null) {
-                        // assign to a default user (e.g., admin) if not found by token
-                        user = userRepository.findById(1)
-                                .orElseThrow(() -> new ServiceException(
-                                        "Utilisateur par défaut non trouvé pour l'ID 1"));
-                    }
-                    s.setUser(user);
-
-                    // Coordinates
-                    Double x = dto.getX();
-                    Double y = dto.getY();
-                    // point
-                    Point p = new Point();
-                    p.setX(x != null ? x : 0.0);
-                    p.setY(y != null ? y : 0.0);
-                    p.setLocalisation(dto.getLocalisation() != null ? dto.getLocalisation() : "");
-                    p.setFirestoreSynced(false);
-                    pointRepository.save(p);
-                    s.setPoint(p);
-                    // description
-                    s.setDescription(dto.getDescription());
-                    // createdAt
-                    if (dto.getCreatedAt() != null) {
-                        s.setCreatedAt(dto.getCreatedAt());
-                    } else {
-                        s.setCreatedAt(now);
-                    }
+            if (System.currentTimeMillis() - signalementAddReconciledAt >= importReconcileIntervalMinutes * 60_000L) {
+                reconcileSignalementAdd(cursor, pageSize);
+            }
+            imported += retryFailedDocs(status, now);
+
+            while (true) {
+                Timestamp after = cursor.getLastUpdateTime() != null
+                        ? Timestamp.ofTimeSecondsAndNanos(cursor.getLastUpdateTime().getEpochSecond(),
+                                cursor.getLastUpdateTime().getNano())
+                        : null;
+                List<DocumentSnapshot> page = firestoreService.fetchSignalementDocumentsPage(after,
+                        cursor.getLastDocId(), pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
 
-                    // status
-                    s.setStatus(status);
-                    // firestoreSynced
-                    s.setFirestoreSynced(false);
-
-                    SignalementHistory history = new SignalementHistory();
-                    history.setSignalement(s);
-                    history.setChangedAt(now);
-                    history.setStatus(status);
-                    signalementHistoryRepository.save(history);
-
-                    Signalement saved = signalementRepository.save(s);
-                    signalementHistoryRepository.save(history);
-
-                    // Persist images associated to this signalement (if any).
-                    // Download remote images (cheminOnline) into local folder
-                    // ./uploads/signalement.
-                    if (dto.getImages() != null) {
-                        for (SignalementImageDTO imgDto : dto.getImages()) {
-                            SignalementImage img = new SignalementImage();
-                            String online = imgDto.getCheminOnline();
-                            String localPath = imgDto.getCheminLocal();
-                            String fileName = imgDto.getNomFichier();
-
-                            if (online != null && !online.isBlank()) {
-                                try {
-                                    Path uploadsDir = Paths.get(uploadsBaseDir, "signalement");
-                                    System.out.println("INFO: Preparing to download image for signalement "
-                                            + saved.getId() + " from " + online);
-                                    System.out.println("INFO: uploads.base-dir = " + uploadsBaseDir
-                                            + ", uploads dir (before create): " + uploadsDir.toAbsolutePath());
-                                    Files.createDirectories(uploadsDir);
-                                    System.out.println(
-                                            "INFO: uploads dir (after create): " + uploadsDir.toAbsolutePath());
-
-                                    URL url = new URL(online);
-
-                                    String remoteName = fileName;
-                                    if (remoteName == null || remoteName.isBlank()) {
-                                        String path = url.getPath();
-                                        remoteName = Paths.get(path).getFileName().toString();
-                                    }
-
-                                    String safeName = saved.getId() + "_" + System.currentTimeMillis() + "_"
-                                            + remoteName;
-                                    Path dest = uploadsDir.resolve(safeName);
-                                    System.out.println("INFO: will save image to " + dest.toAbsolutePath());
-
-                                    try (InputStream in = url.openStream()) {
-                                        Files.copy(in, dest, StandardCopyOption.REPLACE_EXISTING);
-                                    }
-
-                                    localPath = dest.toString();
-                                    img.setSignalement(saved);
-                                    img.setCheminLocal(localPath);
-                                    img.setCheminOnline(online);
-                                    img.setNomFichier(safeName);
-                                    signalementImageRepository.save(img);
-                                } catch (IOException ioEx) {
-                                    System.out.println("ERROR: IOException while downloading image " + online
-                                            + " for signalement " + saved.getId() + ": " + ioEx.getMessage());
-                                    ioEx.printStackTrace();
-                                    // preserve previous behavior: throw ServiceException to signal offline/network
-                                    // error
-                                    throw new ServiceException(
-                                            "Impossible de télécharger l'image depuis le remote (hors connexion?) : "
-                                                    + online,
-                                            ioEx);
-                                } catch (Exception exImg) {
-                                    System.out.println("WARN: Impossible de sauvegarder l'image pour signalement "
-                                            + saved.getId() + ": " + exImg.getMessage());
-                                    exImg.printStackTrace();
-                                }
-                            } else {
-                                // No remote URL; save the record using provided local path if any
-                                try {
-                                    img.setSignalement(saved);
-                                    img.setCheminLocal(localPath);
-                                    img.setCheminOnline(online);
-                                    img.setNomFichier(fileName);
-                                    signalementImageRepository.save(img);
-                                } catch (Exception imgEx) {
-                                    System.out
-                                            .println("WARN: Impossible de sauvegarder l'image locale pour signalement "
-                                                    + saved.getId() + ": " + imgEx.getMessage());
-                                }
-                            }
-                        }
+                List<String> importedDocIds = importDocs(page, status, now);
+                imported += importedDocIds.size();
+                Set<String> importedSet = new HashSet<>(importedDocIds);
+                for (DocumentSnapshot doc : page) {
+                    if (!importedSet.contains(doc.getId())) {
+                        retryDocIds.add(doc.getId());
                     }
+                }
 
-                    imported++;
-                } catch (Exception inner) {
-                    inner.printStackTrace();
-                    logger.error("Erreur import DTO (description={}): {}", dto.getDescription(), inner.getMessage(),
-                            inner);
+                DocumentSnapshot last = page.get(page.size() - 1);
+                Timestamp lastUpdate = last.getTimestamp("updatedAt");
+                cursor.setLastUpdateTime(Instant.ofEpochSecond(lastUpdate.getSeconds(), lastUpdate.getNanos()));
+                cursor.setLastDocId(last.getId());
+                cursor.setUpdatedAt(LocalDateTime.now());
+                syncCursorRepository.save(cursor);
+
+                int deleted = firestoreService.deleteDocuments("signalementAdd", importedDocIds);
+                logger.info("Import incremental: page de {} document(s), {} importe(s), {} supprime(s)", page.size(),
+                        importedDocIds.size(), deleted);
+
+                if (page.size() < pageSize) {
+                    break;
                 }
             }
+        } catch (ServiceException se) {
+            throw se;
+        } catch (Exception e) {
+            logger.error("Erreur synchronization incrementale Firestore", e);
+            throw new ServiceException("Erreur lors de la synchronisation depuis Firestore", e);
+        }
+        return imported;
+    }
+
+    /**
+     * Parcours complet de signalementAdd (champ updatedAt seul), au premier import puis toutes les
+     * sync.import.reconcile-interval-minutes : les documents sans updatedAt (anciennes versions de
+     * l'application mobile) recoivent l'heure serveur pour entrer dans la requete paginee, et ceux
+     * deja derriere le curseur (echecs d'avant un redemarrage) sont ajoutes a retryDocIds.
+     */
+    private void reconcileSignalementAdd(SyncCursor cursor, int pageSize) throws Exception {
+        List<String> missing = new ArrayList<>();
+        int behind = 0;
+        for (DocumentSnapshot doc : firestoreService.scanDocuments("signalementAdd", pageSize, "updatedAt")) {
+            Timestamp updatedAt = doc.getTimestamp("updatedAt");
+            if (updatedAt == null) {
+                missing.add(doc.getId());
+            } else if (isBehindCursor(updatedAt, doc.getId(), cursor)) {
+                retryDocIds.add(doc.getId());
+                behind++;
+            }
+        }
+        int touched = firestoreService.touchServerTimestamp("signalementAdd", missing, "updatedAt");
+        signalementAddReconciledAt = System.currentTimeMillis();
+        logger.info("Import incremental: {} document(s) sans updatedAt mis a jour, {} derriere le curseur a retenter",
+                touched, behind);
+    }
+
+    private static boolean isBehindCursor(Timestamp updatedAt, String docId, SyncCursor cursor) {
+        if (cursor.getLastUpdateTime() == null) {
+            return false;
+        }
+        Instant at = Instant.ofEpochSecond(updatedAt.getSeconds(), updatedAt.getNanos());
+        int cmp = at.compareTo(cursor.getLastUpdateTime());
+        return cmp < 0 || (cmp == 0 && cursor.getLastDocId() != null && docId.compareTo(cursor.getLastDocId()) <= 0);
+    }
+
+    /**
+     * Retente les documents de retryDocIds : ceux importes sont supprimes de Firestore, ceux qui
+     * n'existent plus sont oublies, les autres restent a retenter.
+     */
+    private int retryFailedDocs(SignalementStatus status, LocalDateTime now) throws Exception {
+        if (retryDocIds.isEmpty()) {
+            return 0;
+        }
+        List<String> ids = new ArrayList<>(retryDocIds);
+        List<DocumentSnapshot> docs = firestoreService.fetchDocuments("signalementAdd", ids);
+        Set<String> existing = new HashSet<>();
+        docs.forEach(d -> existing.add(d.getId()));
+        ids.stream().filter(id -> !existing.contains(id)).forEach(retryDocIds::remove);
+
+        List<String> importedDocIds = importDocs(docs, status, now);
+        importedDocIds.forEach(retryDocIds::remove);
+        firestoreService.deleteDocuments("signalementAdd", importedDocIds);
+        logger.info("Import incremental: {} document(s) retente(s), {} importe(s), {} encore en attente", docs.size(),
+                importedDocIds.size(), retryDocIds.size());
+        return importedDocIds.size();
+    }
+
+    /**
+     * Importe des documents signalementAdd et retourne les ids des documents importes.
+     * En mode bulk (sync.import.bulk=true) les documents sont importes par lots de
+     * sync.import.chunk-size, chacun dans sa propre transaction ; sinon un par un via importDto, une
+     * transaction par document.
+     */
+    private List<String> importDocs(List<DocumentSnapshot> docs, SignalementStatus status, LocalDateTime now) {
+        Map<String, SignalementDto> dtosByDocId = new LinkedHashMap<>();
+        for (DocumentSnapshot doc : docs) {
+            try {
+                SignalementDto dto = mapDocToDto(doc);
+                if (dto != null)
+                    dtosByDocId.put(doc.getId(), dto);
+            } catch (Exception inner) {
+                logger.error("Erreur lecture document Firestore {}: {}", doc.getId(), inner.getMessage(), inner);
+            }
+        }
 
-            // After importing all DTOs, delete all documents in the Firestore collection to
-            // clean up
+        // Documents deja importes (crash avant suppression, autre instance) : consideres comme
+        // importes, ils seront supprimes de Firestore sans creer de doublon.
+        List<String> importedDocIds = new ArrayList<>(skipAlreadyImported(dtosByDocId));
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        if (!importBulk) {
+            dtosByDocId.forEach((docId, dto) -> {
+                try {
+                    tx.executeWithoutResult(st -> importDto(docId, dto, status, now));
+                    importedDocIds.add(docId);
+                } catch (Exception inner) {
+                    logger.error("Erreur import document Firestore {}: {}", docId, inner.getMessage(), inner);
+                }
+            });
+            return importedDocIds;
+        }
+
+        List<String> pendingIds = new ArrayList<>(dtosByDocId.keySet());
+        int chunkSize = Math.max(1, importChunkSize);
+        for (int start = 0; start < pendingIds.size(); start += chunkSize) {
+            List<String> chunkIds = pendingIds.subList(start, Math.min(start + chunkSize, pendingIds.size()));
+            long t0 = System.currentTimeMillis();
             try {
-                List<DocumentSnapshot> docs = firestoreService.fetchAllSignalementDocuments();
-                for (DocumentSnapshot doc : docs) {
-                    try {
-                        firestoreService.deleteDocument("signalementAdd", doc.getId());
-                    } catch (Exception exDel) {
-                        System.out.println("WARN: Impossible de supprimer doc Firestore " + doc.getId() + ": "
-                                + exDel.getMessage());
-                        throw exDel;
-                    }
+                List<String> done = tx.execute(st -> importChunk(chunkIds, dtosByDocId, status, now));
+                importedDocIds.addAll(done);
+                logger.info("Import bulk: lot de {} document(s), {} importe(s) en {} ms", chunkIds.size(),
+                        done.size(), System.currentTimeMillis() - t0);
+            } catch (DataIntegrityViolationException dup) {
+                // Une autre instance a importe une partie du lot entre-temps : on retire les
+                // documents deja presents et on rejoue le lot une fois.
+                Map<String, SignalementDto> retry = new LinkedHashMap<>();
+                chunkIds.forEach(id -> retry.put(id, dtosByDocId.get(id)));
+                importedDocIds.addAll(skipAlreadyImported(retry));
+                try {
+                    List<String> retryIds = new ArrayList<>(retry.keySet());
+                    importedDocIds.addAll(tx.execute(st -> importChunk(retryIds, retry, status, now)));
+                } catch (Exception chunkEx) {
+                    logger.error("Erreur import bulk d'un lot de {} document(s): {}", chunkIds.size(),
+                            chunkEx.getMessage(), chunkEx);
                 }
-            } catch (Exception eDelAll) {
-                logger.error("Erreur lors de la suppression en masse des documents Firestore: {}", eDelAll.getMessage(),
-                        eDelAll);
+            } catch (Exception chunkEx) {
+                logger.error("Erreur import bulk d'un lot de {} document(s): {}", chunkIds.size(),
+                        chunkEx.getMessage(), chunkEx);
             }
-        } catch (Exception e) {
-            logger.error("Erreur synchronization Firestore", e);
-            throw new ServiceException("Erreur lors de la synchronisation depuis Firestore", e);
         }
+        return importedDocIds;
+    }
 
-        return imported;
+    /**
+     * Retire de la map les documents deja importes (firestore_doc_id present) et retourne leurs ids.
+     */
+    private List<String> skipAlreadyImported(Map<String, SignalementDto> dtosByDocId) {
+        if (dtosByDocId.isEmpty()) {
+            return List.of();
+        }
+        List<String> existing = signalementRepository.findExistingFirestoreDocIds(dtosByDocId.keySet());
+        existing.forEach(dtosByDocId::remove);
+        if (!existing.isEmpty()) {
+            logger.info("Import: {} document(s) deja importe(s) ignore(s)", existing.size());
+        }
+        return existing;
+    }
+
+    /**
+     * Importe un lot dans la transaction courante : utilisateurs resolus en une requete, puis
+     * points, signalements, historiques et images inseres par saveAll (batching JDBC Hibernate).
+     * Les documents dont l'utilisateur est introuvable sont ignores et restent dans Firestore.
+     */
+    private List<String> importChunk(List<String> docIds, Map<String, SignalementDto> dtosByDocId,
+            SignalementStatus status, LocalDateTime now) {
+        Set<String> tokens = new HashSet<>();
+        for (String docId : docIds) {
+            String token = dtosByDocId.get(docId).getUserToken();
+            if (token != null)
+                tokens.add(token);
+        }
+        Map<String, User> usersByToken = new HashMap<>();
+        if (!tokens.isEmpty()) {
+            for (User u : userRepository.findByFirebaseTokenIn(tokens)) {
+                usersByToken.putIfAbsent(u.getFirebaseToken(), u);
+            }
+        }
+
+        User defaultUser = null;
+        List<Point> points = new ArrayList<>();
+        List<Signalement> signalements = new ArrayList<>();
+        List<SignalementHistory> histories = new ArrayList<>();
+        List<SignalementImage> images = new ArrayList<>();
+        List<String> importedDocIds = new ArrayList<>();
+        for (String docId : docIds) {
+            SignalementDto dto = dtosByDocId.get(docId);
+            User user = null;
+            if (dto.getUserToken() != null) {
+                user = usersByToken.get(dto.getUserToken());
+                if (user == null) {
+                    logger.error("Utilisateur non trouvé pour le token: {} (document {})", dto.getUserToken(), docId);
+                    continue;
+                }
+            }
+            if (user == null && dto.getUserId() != null) {
+                if (defaultUser == null) {
+                    defaultUser = userRepository.findById(1)
+                            .orElseThrow(() -> new ServiceException("Utilisateur par défaut non trouvé pour l'ID 1"));
+                }
+                user = defaultUser;
+            }
+
+            Point p = buildPoint(dto);
+            Signalement s = buildSignalement(dto, user, p, status, now);
+            s.setFirestoreDocId(docId);
+            points.add(p);
+            signalements.add(s);
+            histories.add(buildHistory(s, status, now));
+            if (dto.getImages() != null) {
+                for (SignalementImageDTO imgDto : dto.getImages()) {
+                    SignalementImage img = buildImage(s, imgDto);
+                    if (img != null)
+                        images.add(img);
+                }
+            }
+            importedDocIds.add(docId);
+        }
+
+        pointRepository.saveAll(points);
+        signalementRepository.saveAll(signalements);
+        signalementHistoryRepository.saveAll(histories);
+        signalementImageRepository.saveAll(images);
+        for (SignalementImage img : images) {
+            if (img.getDownloadStatus() == ImageDownloadStatus.PENDING)
+                imageDownloadService.schedule(img.getId());
+        }
+        return importedDocIds;
+    }
+
+    /**
+     * Persiste un signalement issu de Firestore : point, signalement, historique et images.
+     */
+    private Signalement importDto(String docId, SignalementDto dto, SignalementStatus status, LocalDateTime now) {
+        // getUser
+        User user = null;
+        if (dto.getUserToken() != null) {
+            user = userRepository.findByFirebaseToken(dto.getUserToken())
+                    .orElseThrow(() -> new ServiceException(
+                            "Utilisateur non trouvé pour le token: " + dto.getUserToken()));
+        }
+        if (user == null && dto.getUserId() != null) {
+            // assign to a default user (e.g., admin) if not found by token
+            user = userRepository.findById(1)
+                    .orElseThrow(() -> new ServiceException(
+                            "Utilisateur par défaut non trouvé pour l'ID 1"));
+        }
+
+        Point p = buildPoint(dto);
+        pointRepository.save(p);
+        Signalement s = buildSignalement(dto, user, p, status, now);
+        s.setFirestoreDocId(docId);
+        Signalement saved = signalementRepository.save(s);
+        signalementHistoryRepository.save(buildHistory(saved, status, now));
+
+        // Persist images associated to this signalement (if any).
+        // Remote images (cheminOnline) are saved as PENDING and downloaded after commit
+        // into the content-addressed store by ImageDownloadService.
+        if (dto.getImages() != null) {
+            for (SignalementImageDTO imgDto : dto.getImages()) {
+                SignalementImage img = buildImage(saved, imgDto);
+                if (img == null)
+                    continue;
+                try {
+                    signalementImageRepository.save(img);
+                    if (img.getDownloadStatus() == ImageDownloadStatus.PENDING)
+                        imageDownloadService.schedule(img.getId());
+                } catch (Exception exImg) {
+                    System.out.println("WARN: Impossible de sauvegarder l'image pour signalement "
+                            + saved.getId() + ": " + exImg.getMessage());
+                }
+            }
+        }
+        return saved;
+    }
+
+    private Point buildPoint(SignalementDto dto) {
+        Point p = new Point();
+        p.setX(dto.getX() != null ? dto.getX() : 0.0);
+        p.setY(dto.getY() != null ? dto.getY() : 0.0);
+        p.setLocalisation(dto.getLocalisation() != null ? dto.getLocalisation() : "");
+        p.setFirestoreSynced(false);
+        return p;
+    }
+
+    private Signalement buildSignalement(SignalementDto dto, User user, Point p, SignalementStatus status,
+            LocalDateTime now) {
+        Signalement s = new Signalement();
+        s.setUser(user);
+        s.setPoint(p);
+        s.setDescription(dto.getDescription());
+        s.setCreatedAt(dto.getCreatedAt() != null ? dto.getCreatedAt() : now);
+        s.setStatus(status);
+        s.setFirestoreSynced(false);
+        return s;
+    }
+
+    private SignalementHistory buildHistory(Signalement s, SignalementStatus status, LocalDateTime now) {
+        SignalementHistory history = new SignalementHistory();
+        history.setSignalement(s);
+        history.setChangedAt(now);
+        history.setStatus(status);
+        return history;
+    }
+
+    /**
+     * Image distante : PENDING, telechargee apres commit. Sans URL distante : chemin local fourni.
+     * Retourne null si l'URL distante est invalide.
+     */
+    private SignalementImage buildImage(Signalement s, SignalementImageDTO imgDto) {
+        SignalementImage img = new SignalementImage();
+        img.setSignalement(s);
+        String online = imgDto.getCheminOnline();
+        if (online != null && !online.isBlank()) {
+            String remoteName = imgDto.getNomFichier();
+            if (remoteName == null || remoteName.isBlank()) {
+                try {
+                    remoteName = Paths.get(new URL(online).getPath()).getFileName().toString();
+                } catch (Exception e) {
+                    System.out.println("WARN: URL d'image invalide " + online + ": " + e.getMessage());
+                    return null;
+                }
+            }
+            img.setCheminOnline(online);
+            img.setNomFichier(remoteName);
+            img.setDownloadStatus(ImageDownloadStatus.PENDING);
+            img.setDownloadAttempts(0);
+        } else {
+            img.setCheminLocal(imgDto.getCheminLocal());
+            img.setCheminOnline(online);
+            img.setNomFichier(imgDto.getNomFichier());
+            img.setDownloadStatus(ImageDownloadStatus.DONE);
+        }
+        return img;
     }
 
     @Transactional
@@ -565,6 +916,7 @@ public class SignalementService {
             signalementHistoryRepository.save(signalementHistory);
             probleme = problemeRepository.save(probleme);
             problemeHistoryRepository.save(problemeHistory);
+            problemeStatsStore.recordTransition(probleme.getId(), entreprise.getId(), status.getValeur(), now);
 
         } catch (Exception e) {
             logger.error("Erreur rapport technicien", e);
@@ -0,0 +1,268 @@
+package com.projet.lalana.service;
+
+import com.projet.lalana.dto.SyncRunStatus;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Moteur de synchronisation : planification des taches de sync et garde "single-flight".
+ *
+ * Toute execution (planifiee, POST /sync, declenchement asynchrone) passe par {@link #runExclusive}
+ * qui prend un verrou local puis un verrou consultatif PostgreSQL (pg_try_advisory_lock) sur une
+ * connexion dediee : une seule synchronisation tourne a la fois, y compris entre plusieurs
+ * instances. Une execution qui trouve le verrou pris est ignoree, pas mise en attente.
+ *
+ * La planification est desactivee par defaut (sync.schedule.enabled) ; chaque tache a son
+ * intervalle (0 = tache non planifiee).
+ */
+@Service
+@RequiredArgsConstructor
+public class SyncEngineService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncEngineService.class);
+
+    /** Cle du verrou consultatif PostgreSQL partage par toutes les instances. */
+    private static final long SYNC_LOCK_KEY = 0x4C414C414E41L; // "LALANA"
+
+    private final SyncService syncService;
+    private final SignalementService signalementService;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    @Qualifier("syncTriggerExecutor")
+    private final ExecutorService syncTriggerExecutor;
+
+    @Value("${sync.schedule.enabled:false}")
+    private boolean scheduleEnabled;
+
+    @Value("${sync.schedule.full.interval-ms:0}")
+    private long fullIntervalMs;
+
+    @Value("${sync.schedule.import.interval-ms:60000}")
+    private long importIntervalMs;
+
+    @Value("${sync.schedule.push.interval-ms:60000}")
+    private long pushIntervalMs;
+
+    @Value("${sync.schedule.cleanup.interval-ms:900000}")
+    private long cleanupIntervalMs;
+
+    @Value("${sync.schedule.fcm-tokens.interval-ms:300000}")
+    private long fcmTokensIntervalMs;
+
+    private final ReentrantLock localLock = new ReentrantLock();
+    private final SyncRunStatus status = new SyncRunStatus();
+
+    /**
+     * Tick du planificateur : lance chaque tache dont l'intervalle est ecoule.
+     */
+    @Scheduled(fixedDelayString = "${sync.schedule.tick-ms:5000}", initialDelayString = "${sync.schedule.initial-delay-ms:30000}")
+    public void tick() {
+        if (!scheduleEnabled) {
+            return;
+        }
+        if (isDue("full", fullIntervalMs)) {
+            runExclusive("full", "SCHEDULED", () -> syncService.runFullSyncCycle(SyncProgressListener.NONE, false));
+            return;
+        }
+        if (isDue("import", importIntervalMs)) {
+            runExclusive("import", "SCHEDULED",
+                    inTransaction(() -> result("imported_signalements", signalementService.synchronisation())));
+        }
+        if (isDue("push", pushIntervalMs)) {
+            // pas de transaction englobante : la poussee ouvre ses transactions courtes
+            runExclusive("push", "SCHEDULED", () -> {
+                Map<String, Object> out = new HashMap<>();
+                out.put("pushed_signalements", syncService.syncSignalements());
+                out.put("pushed_problemes", syncService.syncProblemes());
+                return out;
+            });
+        }
+        if (isDue("cleanup", cleanupIntervalMs)) {
+            runExclusive("cleanup", "SCHEDULED", () -> {
+                Map<String, Object> out = new HashMap<>();
+                out.put("deleted_signalements", syncService.deleteSignalementsValeur30());
+                out.put("deleted_problemes", syncService.deleteProblemesValeur30());
+                return out;
+            });
+        }
+        if (isDue("fcm_tokens", fcmTokensIntervalMs)) {
+            runExclusive("fcm_tokens", "SCHEDULED",
+                    inTransaction(() -> result("fcm_tokens_synced", syncService.syncFcmTokensFromFirestore())));
+        }
+    }
+
+    /**
+     * Lance un cycle complet en arriere-plan. Retourne false si une synchronisation est deja en cours.
+     */
+    public boolean trigger() {
+        if (isRunning()) {
+            return false;
+        }
+        syncTriggerExecutor.submit(() -> runExclusive("full", "API", () -> syncService.runFullSyncCycle(SyncProgressListener.NONE, false)));
+        return true;
+    }
+
+    /**
+     * Execute la tache si aucune autre synchronisation ne tourne (verrou local + verrou consultatif).
+     * Retourne empty si la tache a ete ignoree.
+     */
+    public Optional<Map<String, Object>> runExclusive(String task, String trigger, Supplier<Map<String, Object>> work) {
+        if (!localLock.tryLock()) {
+            skipped(task);
+            return Optional.empty();
+        }
+        try {
+            return jdbcTemplate.execute((ConnectionCallback<Optional<Map<String, Object>>>) con -> {
+                if (!advisoryLock(con, "SELECT pg_try_advisory_lock(?)")) {
+                    skipped(task);
+                    return Optional.empty();
+                }
+                try {
+                    return Optional.of(run(task, trigger, work));
+                } finally {
+                    advisoryLock(con, "SELECT pg_advisory_unlock(?)");
+                }
+            });
+        } finally {
+            localLock.unlock();
+        }
+    }
+
+    public boolean isRunning() {
+        synchronized (status) {
+            return status.isRunning();
+        }
+    }
+
+    /**
+     * Copie de l'etat courant (le resultat detaille n'inclut pas les snapshots).
+     */
+    public SyncRunStatus getStatus() {
+        synchronized (status) {
+            SyncRunStatus copy = new SyncRunStatus();
+            copy.setRunning(status.isRunning());
+            copy.setCurrentTask(status.getCurrentTask());
+            copy.setCurrentTrigger(status.getCurrentTrigger());
+            copy.setStartedAt(status.getStartedAt());
+            copy.setLastTask(status.getLastTask());
+            copy.setLastFinishedAt(status.getLastFinishedAt());
+            copy.setLastDurationMs(status.getLastDurationMs());
+            copy.setLastResult(status.getLastResult());
+            copy.setLastError(status.getLastError());
+            copy.setLastRunByTask(new HashMap<>(status.getLastRunByTask()));
+            copy.setSkippedRuns(status.getSkippedRuns());
+            return copy;
+        }
+    }
+
+    private Map<String, Object> run(String task, String trigger, Supplier<Map<String, Object>> work) {
+        long start = System.currentTimeMillis();
+        synchronized (status) {
+            status.setRunning(true);
+            status.setCurrentTask(task);
+            status.setCurrentTrigger(trigger);
+            status.setStartedAt(LocalDateTime.now());
+        }
+        Map<String, Object> out = null;
+        String error = null;
+        try {
+            out = work.get();
+            return out;
+        } catch (RuntimeException e) {
+            logger.error("[SYNC-ENGINE] Tâche {} ({}) en échec", task, trigger, e);
+            error = e.getMessage();
+            throw e;
+        } finally {
+            long duration = System.currentTimeMillis() - start;
+            synchronized (status) {
+                status.setRunning(false);
+                status.setCurrentTask(null);
+                status.setCurrentTrigger(null);
+                status.setStartedAt(null);
+                status.setLastTask(task);
+                status.setLastFinishedAt(LocalDateTime.now());
+                status.setLastDurationMs(duration);
+                status.setLastResult(withoutSnapshots(out));
+                status.setLastError(error);
+                status.getLastRunByTask().put(task, LocalDateTime.now());
+                if ("full".equals(task)) {
+                    // un cycle complet couvre toutes les taches planifiees
+                    for (String t : new String[] { "import", "push", "cleanup", "fcm_tokens" }) {
+                        status.getLastRunByTask().put(t, LocalDateTime.now());
+                    }
+                }
+            }
+            logger.info("[SYNC-ENGINE] Tâche {} ({}) terminée en {} ms", task, trigger, duration);
+        }
+    }
+
+    private boolean isDue(String task, long intervalMs) {
+        if (intervalMs <= 0) {
+            return false;
+        }
+        LocalDateTime last;
+        synchronized (status) {
+            last = status.getLastRunByTask().get(task);
+        }
+        return last == null || !last.plusNanos(intervalMs * 1_000_000L).isAfter(LocalDateTime.now());
+    }
+
+    private void skipped(String task) {
+        synchronized (status) {
+            status.setSkippedRuns(status.getSkippedRuns() + 1);
+        }
+        logger.info("[SYNC-ENGINE] Tâche {} ignorée : une synchronisation est déjà en cours", task);
+    }
+
+    private static boolean advisoryLock(java.sql.Connection con, String sql) throws java.sql.SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setLong(1, SYNC_LOCK_KEY);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static Map<String, Object> withoutSnapshots(Map<String, Object> out) {
+        if (out == null) {
+            return null;
+        }
+        Map<String, Object> copy = new HashMap<>(out);
+        copy.remove("all_signalements");
+        copy.remove("all_problemes");
+        return copy;
+    }
+
+    /**
+     * Les taches unitaires chargent des associations lazy : hors requete HTTP elles ont besoin
+     * de leur propre transaction (le cycle complet et la poussee ouvrent les leurs).
+     */
+    private Supplier<Map<String, Object>> inTransaction(Supplier<Map<String, Object>> work) {
+        return () -> new TransactionTemplate(transactionManager).execute(st -> work.get());
+    }
+
+    private static Map<String, Object> result(String key, Object value) {
+        Map<String, Object> out = new HashMap<>();
+        out.put(key, value);
+        return out;
+    }
+}
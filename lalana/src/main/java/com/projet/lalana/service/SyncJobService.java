@@ -0,0 +1,243 @@
+package com.projet.lalana.service;
+
+import com.projet.lalana.dto.ProblemeDto;
+import com.projet.lalana.dto.SignalementDto;
+import com.projet.lalana.dto.SyncJob;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Jobs de synchronisation asynchrones : la soumission retourne immediatement un id, le cycle
+ * complet s'execute sur syncTriggerExecutor (sous le verrou du {@link SyncEngineService}) et sa
+ * progression est consultable ou diffusee en Server-Sent Events. Les derniers jobs sont gardes
+ * en memoire.
+ */
+@Service
+@RequiredArgsConstructor
+public class SyncJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncJobService.class);
+    private static final int MAX_JOBS = 20;
+    private static final long SSE_TIMEOUT_MS = 30 * 60 * 1000L;
+
+    private final SyncService syncService;
+    private final SyncEngineService syncEngineService;
+    private final SignalementService signalementService;
+    private final ProblemeService problemeService;
+    private final PlatformTransactionManager transactionManager;
+    @Qualifier("syncTriggerExecutor")
+    private final ExecutorService syncTriggerExecutor;
+
+    private final Map<String, SyncJob> jobs = new LinkedHashMap<>();
+    private final Map<String, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    /**
+     * Soumet un cycle complet. Si un job est deja en attente ou en cours, c'est lui qui est retourne.
+     */
+    public SyncJob submit(boolean includeSnapshot, boolean delta, String since) {
+        if (delta && since != null && !since.isBlank()) {
+            SyncService.parseVersion(since);
+        }
+        SyncJob job;
+        synchronized (jobs) {
+            for (SyncJob existing : jobs.values()) {
+                if (existing.getStatus() == SyncJob.Status.QUEUED || existing.getStatus() == SyncJob.Status.RUNNING) {
+                    return existing.copy();
+                }
+            }
+            job = new SyncJob();
+            job.setId(UUID.randomUUID().toString());
+            job.setStatus(SyncJob.Status.QUEUED);
+            job.setIncludeSnapshot(includeSnapshot);
+            job.setCreatedAt(LocalDateTime.now());
+            jobs.put(job.getId(), job);
+            while (jobs.size() > MAX_JOBS) {
+                String oldest = jobs.keySet().iterator().next();
+                jobs.remove(oldest);
+            }
+        }
+        final SyncJob submitted = job;
+        syncTriggerExecutor.submit(() -> execute(submitted, delta, since));
+        return snapshotOf(job);
+    }
+
+    public Optional<SyncJob> get(String id) {
+        synchronized (jobs) {
+            SyncJob job = jobs.get(id);
+            return Optional.ofNullable(job != null ? job.copy() : null);
+        }
+    }
+
+    /**
+     * Flux SSE du job : un evenement "progress" a chaque changement, puis "done" a la fin.
+     * L'emetteur est enregistre sous le verrou des jobs, celui sous lequel la fin du job retire
+     * les emetteurs : un job ne peut pas se terminer entre la lecture de son etat et
+     * l'enregistrement, ce qui laisserait le client sans evenement "done".
+     */
+    public SseEmitter subscribe(String id) {
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT_MS);
+        SyncJob current;
+        synchronized (jobs) {
+            SyncJob job = jobs.get(id);
+            if (job == null) {
+                throw new ServiceException("Job de synchronisation non trouvé: " + id);
+            }
+            current = job.copy();
+            if (!isFinished(current)) {
+                List<SseEmitter> list = emitters.computeIfAbsent(id, k -> new CopyOnWriteArrayList<>());
+                list.add(emitter);
+                emitter.onCompletion(() -> list.remove(emitter));
+                emitter.onTimeout(() -> list.remove(emitter));
+                emitter.onError(e -> list.remove(emitter));
+            }
+        }
+        boolean finished = isFinished(current);
+        send(emitter, finished ? "done" : "progress", current);
+        if (finished) {
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    private void execute(SyncJob job, boolean delta, String since) {
+        update(job, j -> {
+            j.setStatus(SyncJob.Status.RUNNING);
+            j.setStartedAt(LocalDateTime.now());
+        });
+        try {
+            Optional<Map<String, Object>> out = syncEngineService.runExclusive("full", "JOB",
+                    () -> delta ? syncService.runFullSyncCycleDelta(listener(job), since)
+                            : syncService.runFullSyncCycle(listener(job), false));
+            if (out.isEmpty()) {
+                update(job, j -> {
+                    j.setStatus(SyncJob.Status.SKIPPED);
+                    j.setError("Une synchronisation est déjà en cours");
+                });
+            } else {
+                Map<String, Object> snapshot = job.isIncludeSnapshot() ? loadSnapshot() : null;
+                update(job, j -> {
+                    j.setResult(out.get());
+                    j.setSnapshot(snapshot);
+                    j.setStatus(SyncJob.Status.DONE);
+                });
+            }
+        } catch (Exception e) {
+            logger.error("[SYNC-JOB] Job {} en échec", job.getId(), e);
+            update(job, j -> {
+                j.setStatus(SyncJob.Status.FAILED);
+                j.setError(e.getMessage());
+            });
+        } finally {
+            SyncJob last;
+            List<SseEmitter> list;
+            synchronized (jobs) {
+                job.setFinishedAt(LocalDateTime.now());
+                last = job.copy();
+                list = emitters.remove(job.getId());
+            }
+            if (list != null) {
+                for (SseEmitter emitter : list) {
+                    send(emitter, "done", last);
+                    emitter.complete();
+                }
+            }
+        }
+    }
+
+    private SyncProgressListener listener(SyncJob job) {
+        return new SyncProgressListener() {
+            @Override
+            public void phaseStarted(String phase) {
+                update(job, j -> j.getPhases().put(phase,
+                        new SyncJob.PhaseProgress(SyncJob.PhaseState.RUNNING, 0, 0, null, null)));
+            }
+
+            @Override
+            public void phaseProgress(String phase, int done, int total) {
+                update(job, j -> {
+                    SyncJob.PhaseProgress p = j.getPhases().get(phase);
+                    if (p != null) {
+                        p.setDone(done);
+                        p.setTotal(total);
+                    }
+                });
+            }
+
+            @Override
+            public void phaseFinished(String phase, long durationMs, String error) {
+                update(job, j -> {
+                    SyncJob.PhaseProgress p = j.getPhases().get(phase);
+                    if (p != null) {
+                        p.setState(error == null ? SyncJob.PhaseState.DONE : SyncJob.PhaseState.FAILED);
+                        p.setDurationMs(durationMs);
+                        p.setError(error);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Snapshot en DTO, construit dans une transaction : hors requete HTTP les associations lazy
+     * des entites ne seraient plus accessibles a la serialisation.
+     */
+    private Map<String, Object> loadSnapshot() {
+        return new TransactionTemplate(transactionManager).execute(st -> {
+            Map<String, Object> snapshot = new HashMap<>();
+            snapshot.put("all_signalements", signalementService.getAll().stream().map(SignalementDto::fromEntity).toList());
+            snapshot.put("all_problemes", problemeService.getAll().stream().map(ProblemeDto::fromEntity).toList());
+            return snapshot;
+        });
+    }
+
+    private void update(SyncJob job, Consumer<SyncJob> change) {
+        SyncJob copy;
+        synchronized (jobs) {
+            change.accept(job);
+            copy = job.copy();
+        }
+        List<SseEmitter> list = emitters.get(job.getId());
+        if (list != null && !isFinished(copy)) {
+            for (SseEmitter emitter : list) {
+                send(emitter, "progress", copy);
+            }
+        }
+    }
+
+    private SyncJob snapshotOf(SyncJob job) {
+        synchronized (jobs) {
+            return job.copy();
+        }
+    }
+
+    private static boolean isFinished(SyncJob job) {
+        return job.getFinishedAt() != null;
+    }
+
+    private static void send(SseEmitter emitter, String event, SyncJob job) {
+        try {
+            emitter.send(SseEmitter.event().name(event).id(job.getId()).data(job));
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+}
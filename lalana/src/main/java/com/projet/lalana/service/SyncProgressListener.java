@@ -0,0 +1,20 @@
+package com.projet.lalana.service;
+
+/**
+ * Callbacks invoked by the full sync cycle as its phases progress. Called from the phase
+ * threads, so implementations must be thread-safe.
+ */
+public interface SyncProgressListener {
+
+    SyncProgressListener NONE = new SyncProgressListener() {
+    };
+
+    default void phaseStarted(String phase) {
+    }
+
+    default void phaseProgress(String phase, int done, int total) {
+    }
+
+    default void phaseFinished(String phase, long durationMs, String error) {
+    }
+}
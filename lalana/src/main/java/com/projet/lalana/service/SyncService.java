@@ -1,11 +1,18 @@
 package com.projet.lalana.service;
 
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.cloud.firestore.DocumentReference;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.WriteResult;
 import com.google.firebase.cloud.FirestoreClient;
+import com.projet.lalana.dto.NotificationOutboxDto;
+import com.projet.lalana.dto.DeleteReport;
+import com.projet.lalana.dto.PushReport;
 import com.projet.lalana.dto.SignalementDto;
+import com.projet.lalana.dto.SignalementImageDTO;
 import com.projet.lalana.model.Probleme;
 import com.projet.lalana.dto.ProblemeDto;
 import com.projet.lalana.model.Signalement;
@@ -20,11 +27,34 @@ import com.google.cloud.firestore.QueryDocumentSnapshot;
 import com.google.cloud.firestore.QuerySnapshot;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,7 +72,46 @@ public class SyncService {
     private final ProblemeService problemeService;
     private final UserService userService;
     private final FcmNotificationService fcmNotificationService;
+    private final NotificationOutboxService notificationOutboxService;
+    private final FcmTokenCache fcmTokenCache;
     private final UserRepository userRepository;
+    private final FirestoreService firestoreService;
+    @Qualifier("syncWorkerExecutor")
+    private final ExecutorService syncWorkerExecutor;
+    @Qualifier("syncPhaseExecutor")
+    private final ExecutorService syncPhaseExecutor;
+    private final PlatformTransactionManager transactionManager;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${sync.push.batched:true}")
+    private boolean pushBatched;
+
+    @Value("${sync.push.batch-size:500}")
+    private int pushBatchSize;
+
+    @Value("${sync.push.max-in-flight:100}")
+    private int pushMaxInFlight;
+
+    @Value("${sync.push.timeout-ms:300000}")
+    private long pushTimeoutMs;
+
+    @Value("${sync.delta.safety-window-ms:60000}")
+    private long deltaSafetyWindowMs;
+
+    @Value("${sync.fcm-tokens.chunk-size:300}")
+    private int fcmTokensChunkSize;
+
+    @Value("${sync.cleanup.bulk:true}")
+    private boolean cleanupBulk;
+
+    @Value("${sync.cleanup.page-size:500}")
+    private int cleanupPageSize;
+
+    @Value("${sync.cleanup.max-ops-per-second:500}")
+    private int cleanupMaxOpsPerSecond;
+
+    /** Upper bound of ids per bulk "UPDATE ... WHERE id IN" statement. */
+    private static final int MARK_SYNCED_CHUNK = 1000;
 
     private static final Logger logger = LoggerFactory.getLogger(SyncService.class);
 
@@ -62,178 +131,263 @@ public class SyncService {
 
     /**
      * Run a full synchronization cycle combining both sync directions and user
-     * syncs.
-     * - push local signalements to Firestore
-     * - remove Firestore docs with valeur=30
-     * - import signalements from Firestore into local DB
-     * (signalementService.synchronisation())
-     * - sync disabled Firebase users -> local (user histories) and delete unmatched
-     * Firebase users
-     * - push local unblocked users -> Firebase
-     * Returns a map with detailed counts and snapshots.
+     * syncs, as a graph of phases on the syncPhaseExecutor. Independent chains run
+     * concurrently:
+     * - users: disabled Firebase users -> local, local unblocked users -> Firebase,
+     * then FCM tokens userTokens -> local (same rows, so kept in sequence)
+     * - signalements: import signalementAdd -> local, then push local -> Firestore; started
+     * once the blocked users are imported so that imported signalements see their state
+     * - push local problemes -> Firestore
+     * - cleanup of Firestore docs with valeur=30 (signalementListe, problemes)
+     * Phases run without an enclosing transaction: each one opens short transactions around
+     * its own reads and writes (per import chunk, per pushed chunk), so no database
+     * connection is held across Firestore calls. A failed phase is logged and reported
+     * under phase_errors without stopping the others. Snapshots are taken on the
+     * caller thread once every chain is done. Returns a map with detailed counts, per-phase durations and
+     * snapshots.
      */
-    @Transactional
     public Map<String, Object> runFullSyncCycle() {
-        Map<String, Object> result = new HashMap<>();
+        return runFullSyncCycle(SyncProgressListener.NONE, true);
+    }
 
-        // 4) users: firebase -> local (blocked)
-        List<UserHistory> blockedHistories = null;
-        try {
-            blockedHistories = userService.getDatasFromFirebase();
-            result.put("blocked_histories", blockedHistories != null ? blockedHistories.size() : 0);
-        } catch (Exception e) {
-            logger.error("Failed to sync blocked users from Firebase to local", e);
-            result.put("blocked_histories", 0);
-        }
+    /**
+     * Same cycle, reporting phase progress to the listener. Snapshots are skipped when
+     * includeSnapshots is false (background jobs load their own).
+     */
+    public Map<String, Object> runFullSyncCycle(SyncProgressListener listener, boolean includeSnapshots) {
+        long start = System.currentTimeMillis();
+        Map<String, Object> result = new ConcurrentHashMap<>();
+        Map<String, Long> durations = new ConcurrentHashMap<>();
+        Map<String, String> errors = new ConcurrentHashMap<>();
 
-        // 5) users: local -> firebase (reactivate)
-        List<com.projet.lalana.model.User> reactivated = null;
-        try {
-            reactivated = userService.syncUnblockedUserToFirebase();
-            result.put("reactivated", reactivated != null ? reactivated.size() : 0);
-        } catch (Exception e) {
-            logger.error("Failed to push unblocked users to Firebase", e);
+        CompletableFuture<Void> usersFromFirebase = phase("users_from_firebase", durations, errors, listener, () -> {
+            result.put("blocked_histories", 0);
+            List<UserHistory> blockedHistories = userService.getDatasFromFirebase();
+            result.put("blocked_histories", blockedHistories != null ? blockedHistories.size() : 0);
+        });
+        CompletableFuture<Void> users = usersFromFirebase.thenCompose(v -> phase("users_to_firebase", durations, errors, listener, () -> {
             result.put("reactivated", 0);
+            List<com.projet.lalana.model.User> reactivated = userService.syncUnblockedUserToFirebase();
+            result.put("reactivated", reactivated != null ? reactivated.size() : 0);
+        })).thenCompose(v -> phase("fcm_tokens", durations, errors, listener, () -> {
+            result.put("fcm_tokens_synced", 0);
+            result.put("fcm_tokens_synced", syncFcmTokensFromFirestore());
+        }));
+
+        CompletableFuture<Void> signalements = usersFromFirebase.thenCompose(v -> phase("import_signalements",
+                durations, errors, listener, () -> {
+                    result.put("imported_signalements", 0);
+                    int imported = signalementService.synchronisation();
+                    result.put("imported_signalements", imported);
+                    listener.phaseProgress("import_signalements", imported, imported);
+                })).thenCompose(v -> phase("push_signalements", durations, errors, listener, () -> {
+            if (pushBatched) {
+                PushReport pushReport = syncSignalementsBatched(listener);
+                result.put("pushed_signalements", pushReport.getPushed());
+                result.put("pushed_signalements_report", pushReport);
+            } else {
+                result.put("pushed_signalements", syncSignalements());
+            }
+        }));
+
+        CompletableFuture<Void> problemes = phase("push_problemes", durations, errors, listener, () -> {
+            int pushed = syncProblemes();
+            result.put("pushed_problemes", pushed);
+            listener.phaseProgress("push_problemes", pushed, pushed);
+        });
+
+        CompletableFuture<Void> cleanupSignalements = phase("cleanup_signalements", durations, errors, listener, () -> {
+            if (cleanupBulk) {
+                DeleteReport report = cleanupValeur30("signalementListe");
+                result.put("deleted_signalements", report.getDeleted());
+                result.put("deleted_signalements_report", report);
+            } else {
+                result.put("deleted_signalements", deleteSignalementsValeur30());
+            }
+        });
+        CompletableFuture<Void> cleanupProblemes = phase("cleanup_problemes", durations, errors, listener, () -> {
+            if (cleanupBulk) {
+                DeleteReport report = cleanupValeur30("problemes");
+                result.put("deleted_problemes", report.getDeleted());
+                result.put("deleted_problemes_report", report);
+            } else {
+                result.put("deleted_problemes", deleteProblemesValeur30());
+            }
+        });
+
+        CompletableFuture.allOf(users, signalements, problemes, cleanupSignalements, cleanupProblemes).join();
+
+        // snapshots: loaded on the caller thread so that lazy associations stay reachable
+        // through the request's open session when the response is serialized
+        if (includeSnapshots) {
+            long snapshotStart = System.currentTimeMillis();
+            try {
+                result.put("all_signalements", signalementService.getAll());
+            } catch (Exception ignored) {
+            }
+            try {
+                result.put("all_problemes", problemeService.getAll());
+            } catch (Exception ignored) {
+            }
+            durations.put("snapshots", System.currentTimeMillis() - snapshotStart);
         }
-        // 3) import firestore -> local
-        int imported = 0;
-        try {
-            imported = signalementService.synchronisation();
-        } catch (Exception e) {
-            logger.error("Failed to import signalements from Firestore", e);
+
+        result.put("phase_durations_ms", new TreeMap<>(durations));
+        if (!errors.isEmpty()) {
+            result.put("phase_errors", new TreeMap<>(errors));
         }
-        result.put("imported_signalements", imported);
+        result.put("cycle_duration_ms", System.currentTimeMillis() - start);
+        logger.info("[SYNC] Cycle complet en {} ms, phases: {}", result.get("cycle_duration_ms"), durations);
+        return new HashMap<>(result);
+    }
 
-        // 1) push local -> Firestore
-        int pushed = syncSignalements();
-        result.put("pushed_signalements", pushed);
-        // 1.b) push local problems -> Firestore
-        int pushedProblemes = syncProblemes();
-        result.put("pushed_problemes", pushedProblemes);
+    /**
+     * Full cycle in delta mode: instead of the whole tables, the result carries only the
+     * signalements and problemes changed since the given version token (or since the start of
+     * this cycle, less the safety window, when none is given), plus a new version token for the
+     * next call.
+     * <p>
+     * updated_at is stamped when a row is written, not when its transaction commits, so a
+     * transaction still open at cycle start can commit rows older than the cycle start after
+     * the changes were read. The returned token is therefore moved back by
+     * sync.delta.safety-window-ms: delivery is at-least-once, and a row changed inside the
+     * window is sent again on the next call. Clients apply changes by id, which makes the
+     * duplicates harmless.
+     */
+    public Map<String, Object> runFullSyncCycleDelta(SyncProgressListener listener, String since) {
+        LocalDateTime version = LocalDateTime.now().minus(Duration.ofMillis(Math.max(0, deltaSafetyWindowMs)));
+        LocalDateTime from = since != null && !since.isBlank() ? parseVersion(since) : version;
+        Map<String, Object> result = runFullSyncCycle(listener, false);
+        result.put("changes", loadChanges(from));
+        result.put("version", toVersion(version));
+        return result;
+    }
 
-        // 2) cleanup firestore
-        int delSig = deleteSignalementsValeur30();
-        int delProb = deleteProblemesValeur30();
-        result.put("deleted_signalements", delSig);
-        result.put("deleted_problemes", delProb);
+    /**
+     * Signalements and problemes whose updated_at is at or after since, as DTOs.
+     */
+    public Map<String, Object> loadChanges(LocalDateTime since) {
+        return readOnlyTransaction().execute(status -> {
+            Map<String, Object> changes = new HashMap<>();
+            changes.put("since", toVersion(since));
+            changes.put("signalements", signalementRepository.findChangedSince(since).stream()
+                    .map(SignalementDto::fromEntity).toList());
+            changes.put("problemes", toProblemeDtos(problemeRepository.findChangedSince(since)));
+            return changes;
+        });
+    }
 
-        // 6) Sync FCM tokens from Firestore userTokens collection into local users
-        int fcmTokensSynced = syncFcmTokensFromFirestore();
-        result.put("fcm_tokens_synced", fcmTokensSynced);
+    /** Version tokens are the epoch millis of a cycle start, minus the safety window. */
+    public static String toVersion(LocalDateTime time) {
+        return String.valueOf(time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
 
-        // 7) snapshots
+    public static LocalDateTime parseVersion(String version) {
         try {
-            result.put("all_signalements", signalementService.getAll());
-        } catch (Exception ignored) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(version.trim())), ZoneId.systemDefault());
+        } catch (NumberFormatException e) {
+            throw new ServiceException("Jeton de version invalide: " + version);
         }
-        try {
-            result.put("all_problemes", problemeService.getAll());
-        } catch (Exception ignored) {
+    }
+
+    /**
+     * Build probleme DTOs with their signalement images loaded in one query.
+     */
+    private List<ProblemeDto> toProblemeDtos(List<Probleme> rows) {
+        List<Integer> signalementIds = rows.stream()
+                .filter(p -> p.getSignalement() != null && p.getSignalement().getId() != null)
+                .map(p -> p.getSignalement().getId())
+                .distinct()
+                .toList();
+        Map<Integer, List<SignalementImage>> imagesBySignalement = new HashMap<>();
+        if (!signalementIds.isEmpty()) {
+            for (SignalementImage img : signalementImageRepository.findBySignalementIdIn(signalementIds)) {
+                imagesBySignalement.computeIfAbsent(img.getSignalement().getId(), k -> new ArrayList<>()).add(img);
+            }
+        }
+        List<ProblemeDto> dtos = new ArrayList<>(rows.size());
+        for (Probleme p : rows) {
+            Integer signalementId = p.getSignalement() != null ? p.getSignalement().getId() : null;
+            dtos.add(ProblemeDto.fromEntity(p, imagesBySignalement.getOrDefault(signalementId, List.of())));
         }
+        return dtos;
+    }
 
-        return result;
+    /**
+     * Run one phase of the sync cycle asynchronously, outside of any transaction (the phase
+     * body opens its own short ones). The returned future always completes normally so that
+     * dependent phases still run.
+     */
+    private CompletableFuture<Void> phase(String name, Map<String, Long> durations, Map<String, String> errors,
+            SyncProgressListener listener, Runnable body) {
+        return CompletableFuture.runAsync(() -> {
+            long t0 = System.currentTimeMillis();
+            String error = null;
+            listener.phaseStarted(name);
+            try {
+                body.run();
+            } catch (Exception e) {
+                logger.error("[SYNC] Phase {} en échec", name, e);
+                error = String.valueOf(e.getMessage());
+                errors.put(name, error);
+            } finally {
+                long duration = System.currentTimeMillis() - t0;
+                durations.put(name, duration);
+                listener.phaseFinished(name, duration, error);
+            }
+        }, syncPhaseExecutor);
+    }
+
+    /**
+     * Short read-only transaction for loading entities and mapping them to detached DTOs.
+     */
+    private TransactionTemplate readOnlyTransaction() {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        return tx;
+    }
+
+    /**
+     * Pending signalements (valeur <= 10, not yet synced) mapped to DTOs in one read-only
+     * transaction, with the online photo URLs of each loaded in a single query.
+     */
+    private List<SignalementDto> loadPendingSignalements(Map<Integer, List<String>> photoUrlsBySignalement) {
+        return readOnlyTransaction().execute(status -> {
+            List<Signalement> rows = signalementRepository.findByStatusValeurLE10();
+            photoUrlsBySignalement.putAll(loadPhotoUrls(rows.stream().map(Signalement::getId).toList()));
+            return rows.stream().map(SignalementDto::fromEntity).toList();
+        });
     }
 
+    /**
+     * Push pending signalements (valeur <= 10, not yet synced) to Firestore. Uses the
+     * batched mode unless sync.push.batched=false.
+     */
     public int syncSignalements() {
+        if (pushBatched) {
+            return syncSignalementsBatched().getPushed();
+        }
         System.out.println("🚀 [SYNC] Démarrage de la synchronisation des signalements...");
-        List<Signalement> rows = signalementRepository.findByStatusValeurLE10();
+        Map<Integer, List<String>> photoUrlsBySignalement = new HashMap<>();
+        List<SignalementDto> rows = loadPendingSignalements(photoUrlsBySignalement);
         System.out.println("📊 [SYNC] Nombre de signalements à synchroniser: " + rows.size());
         int count = 0;
         Firestore db = FirestoreClient.getFirestore();
 
-        for (Signalement s : rows) {
-            String docId = String.valueOf(s.getId());
-            SignalementDto dto = SignalementDto.fromEntity(s);
-            Map<String, Object> doc = new HashMap<>();
-            doc.put("id", dto.getId());
-            doc.put("userId", dto.getUserId());
-            doc.put("userToken", dto.getUserToken());
-            doc.put("x", dto.getX());
-            doc.put("y", dto.getY());
-            doc.put("localisation", dto.getLocalisation());
-            doc.put("description", dto.getDescription());
-            doc.put("createdAt", dto.getCreatedAt() != null ? dto.getCreatedAt().toString() : null);
-            doc.put("statusLibelle", dto.getStatusLibelle());
-            doc.put("valeur", dto.getValeur());
-
-            // Charger les images via repository pour éviter le problème de lazy loading
-            System.out.println("Loading images via repository for signalement id=" + s.getId());
-            List<SignalementImage> images = signalementImageRepository.findBySignalementId(s.getId());
-            System.out.println("Found " + images.size() + " images for signalement id=" + s.getId());
-
-            List<String> photoUrls = new java.util.ArrayList<>();
-            for (SignalementImage img : images) {
-                if (img.getCheminOnline() != null && !img.getCheminOnline().isEmpty()) {
-                    System.out.println("  - Adding photo URL: " + img.getCheminOnline());
-                    photoUrls.add(img.getCheminOnline());
-                }
-            }
-            doc.put("photoUrls", photoUrls);
-            System.out.println("Final photoUrls count for signalement id=" + s.getId() + ": " + photoUrls.size());
+        for (SignalementDto dto : rows) {
+            String docId = String.valueOf(dto.getId());
+            Map<String, Object> doc = toSignalementDoc(dto,
+                    photoUrlsBySignalement.getOrDefault(dto.getId(), List.of()));
 
             try {
                 DocumentReference ref = db.collection("signalementListe").document(docId);
                 ApiFuture<WriteResult> w = ref.set(doc);
                 w.get();
-                markSignalementSynced(s.getId());
+                signalementRepository.markFirestoreSynced(List.of(dto.getId()));
                 count++;
-
-                // ✅ S'assurer que le document userTokens existe dans Firestore pour cet
-                // utilisateur
-                if (dto.getUserToken() != null && !dto.getUserToken().isEmpty() && dto.getUserId() != null) {
-                    try {
-                        fcmNotificationService.ensureUserTokenDocExists(
-                                dto.getUserToken(),
-                                null,
-                                dto.getUserId());
-                    } catch (Exception e) {
-                        System.out.println("⚠️ [SYNC] Erreur lors de la création du userToken doc: " + e.getMessage());
-                    }
-                }
-
-                // ✅ Récupération du vrai FCM token depuis userTokens/{firebaseUid} dans
-                // Firestore
-                String firebaseUid = dto.getUserToken(); // C'est le Firebase UID, pas le FCM token
-                String resolvedFcmToken = null;
-                if (firebaseUid != null && !firebaseUid.isEmpty()) {
-                    System.out.println("🔍 [SYNC] Récupération du FCM token depuis userTokens/" + firebaseUid);
-                    resolvedFcmToken = fcmNotificationService.getFcmTokenFromFirestore(firebaseUid);
-                    System.out.println("🔍 [SYNC] FCM token résolu: " +
-                            (resolvedFcmToken != null
-                                    ? resolvedFcmToken.substring(0, Math.min(20, resolvedFcmToken.length())) + "..."
-                                    : "null"));
-                }
-
-                // ✅ Envoi direct de notification FCM après sync réussie
-                if (resolvedFcmToken != null && !resolvedFcmToken.isEmpty() && dto.getUserId() != null) {
-                    System.out.println(
-                            "✅ [SYNC] Conditions remplies, envoi notification FCM pour signalement id=" + dto.getId());
-                    try {
-                        boolean notifSent = fcmNotificationService.sendSignalementCreatedNotification(
-                                dto.getId(),
-                                String.valueOf(dto.getUserId()),
-                                resolvedFcmToken,
-                                dto.getDescription());
-                        if (notifSent) {
-                            System.out.println("📧 [SYNC] Notification FCM envoyée avec succès pour signalement id="
-                                    + dto.getId());
-                        } else {
-                            System.out.println(
-                                    "⚠️ [SYNC] Échec envoi notification FCM pour signalement id=" + dto.getId());
-                        }
-                    } catch (Exception notifError) {
-                        logger.warn("⚠️ Impossible d'enregistrer la notification pour signalement id={}: {}",
-                                dto.getId(), notifError.getMessage());
-                        System.out.println("❌ [SYNC] Exception lors de l'envoi de notification pour signalement id="
-                                + dto.getId() + ": " + notifError.getMessage());
-                        notifError.printStackTrace();
-                    }
-                } else {
-                    System.out.println("⚠️ [SYNC] Pas de FCM token trouvé pour firebaseUid=" + firebaseUid
-                            + ", userId=" + dto.getUserId() + " - notification non envoyée");
-                }
+                notifySignalementSynced(dto);
             } catch (Exception e) {
-                System.out.println("❌ [SYNC] Erreur sync signalement id=" + s.getId() + ": " + e.getMessage());
+                System.out.println("❌ [SYNC] Erreur sync signalement id=" + dto.getId() + ": " + e.getMessage());
             }
         }
         System.out.println("✅ [SYNC] Synchronisation terminée: " + count + " signalement(s) synchronisé(s) sur "
@@ -241,73 +395,271 @@ public class SyncService {
         return count;
     }
 
-    public int syncProblemes() {
-        List<Probleme> rows = problemeRepository.findByValeur(10);
-        int count = 0;
-        Firestore db = FirestoreClient.getFirestore();
+    /**
+     * Batched push of pending signalements: documents are grouped into Firestore
+     * WriteBatch chunks (at most 500 writes), each committed chunk is flagged
+     * firestore_synced with a single bulk update in its own short transaction, and every
+     * chunk is reported separately so one failure does not hide the others. The rows are
+     * read and mapped to DTOs up front, so no transaction spans a Firestore commit.
+     */
+    public PushReport syncSignalementsBatched() {
+        return syncSignalementsBatched(SyncProgressListener.NONE);
+    }
 
-        for (Probleme p : rows) {
-            System.out.println("Processing probleme id=" + p.getId() + ", valeur=" + p.getProblemeStatus().getValeur()
-                    + ", firestoreSynced=" + p.getFirestoreSynced());
-            if (p.getFirestoreSynced() != null && p.getFirestoreSynced())
+    public PushReport syncSignalementsBatched(SyncProgressListener listener) {
+        Map<Integer, List<String>> photoUrlsBySignalement = new HashMap<>();
+        List<SignalementDto> rows = loadPendingSignalements(photoUrlsBySignalement);
+        PushReport report = new PushReport(rows.size());
+        int chunkSize = Math.max(1, Math.min(pushBatchSize, FirestoreService.MAX_BATCH_WRITES));
+        logger.info("[SYNC] {} signalement(s) à pousser par lots de {}", rows.size(), chunkSize);
+        if (rows.isEmpty()) {
+            return report;
+        }
+
+        for (int start = 0, index = 0; start < rows.size(); start += chunkSize, index++) {
+            List<SignalementDto> dtos = rows.subList(start, Math.min(start + chunkSize, rows.size()));
+            Map<String, Map<String, Object>> docs = new LinkedHashMap<>();
+            List<Integer> ids = new ArrayList<>(dtos.size());
+            for (SignalementDto dto : dtos) {
+                docs.put(String.valueOf(dto.getId()),
+                        toSignalementDoc(dto, photoUrlsBySignalement.getOrDefault(dto.getId(), List.of())));
+                ids.add(dto.getId());
+            }
+
+            long t0 = System.currentTimeMillis();
+            try {
+                firestoreService.setAllInBatch("signalementListe", docs);
+                signalementRepository.markFirestoreSynced(ids);
+                report.chunkSucceeded(index, ids.size(), System.currentTimeMillis() - t0);
+                logger.info("[SYNC] Lot #{} poussé: {} signalement(s) en {} ms", index, ids.size(),
+                        System.currentTimeMillis() - t0);
+            } catch (Exception e) {
+                report.chunkFailed(index, ids.size(), System.currentTimeMillis() - t0, e.getMessage());
+                logger.error("[SYNC] Échec du lot #{} ({} signalement(s), ids {}..{}): {}", index, ids.size(),
+                        ids.get(0), ids.get(ids.size() - 1), e.getMessage());
                 continue;
-            String docId = String.valueOf(p.getId());
-            ProblemeDto dto = ProblemeDto.fromEntity(p);
-            Map<String, Object> doc = new HashMap<>();
-            doc.put("id", dto.getId());
-            doc.put("surface", dto.getSurface());
-            doc.put("budgetEstime", dto.getBudgetEstime());
-            doc.put("niveau", dto.getNiveau());
-            doc.put("entrepriseId", dto.getEntrepriseId());
-            doc.put("entrepriseName", dto.getEntrepriseName());
-            doc.put("statusId", dto.getStatusId());
-            doc.put("statusNom", dto.getStatusNom());
-            doc.put("statusValeur", dto.getStatusValeur());
-            doc.put("signalementId", dto.getSignalementId());
-            doc.put("userId", dto.getUserId());
-            doc.put("userEmail", dto.getUserEmail());
-            doc.put("x", dto.getX());
-            doc.put("y", dto.getY());
-            doc.put("localisation", dto.getLocalisation());
-            doc.put("description", dto.getDescription());
-            doc.put("createdAt", dto.getCreatedAt() != null ? dto.getCreatedAt().toString() : null);
-            doc.put("statusLibelle", dto.getStatusLibelle());
-
-            // Charger les images via repository pour éviter le problème de lazy loading
-            List<String> photoUrls = new java.util.ArrayList<>();
-            if (p.getSignalement() != null && p.getSignalement().getId() != null) {
-                System.out.println("Loading images via repository for probleme id=" + p.getId() + " (signalement id="
-                        + p.getSignalement().getId() + ")");
-                List<SignalementImage> images = signalementImageRepository
-                        .findBySignalementId(p.getSignalement().getId());
-                System.out.println("Found " + images.size() + " images for probleme id=" + p.getId());
-
-                for (SignalementImage img : images) {
-                    if (img.getCheminOnline() != null && !img.getCheminOnline().isEmpty()) {
-                        photoUrls.add(img.getCheminOnline());
-                        System.out.println("  - Added photoUrl: " + img.getCheminOnline());
-                    }
-                }
-            } else {
-                System.out.println("No signalement found for probleme id=" + p.getId());
+            } finally {
+                listener.phaseProgress("push_signalements", report.getPushed() + report.getFailed(),
+                        report.getTotal());
             }
-            doc.put("photoUrls", photoUrls);
-            System.out.println("Final photoUrls count for probleme id=" + p.getId() + ": " + photoUrls.size());
 
+            for (SignalementDto dto : dtos) {
+                notifySignalementSynced(dto);
+            }
+        }
+        logger.info("[SYNC] Poussée par lots terminée: {} poussé(s), {} en échec sur {}", report.getPushed(),
+                report.getFailed(), report.getTotal());
+        return report;
+    }
+
+    private Map<String, Object> toSignalementDoc(SignalementDto dto, List<String> photoUrls) {
+        Map<String, Object> doc = new HashMap<>();
+        doc.put("id", dto.getId());
+        doc.put("userId", dto.getUserId());
+        doc.put("userToken", dto.getUserToken());
+        doc.put("x", dto.getX());
+        doc.put("y", dto.getY());
+        doc.put("localisation", dto.getLocalisation());
+        doc.put("description", dto.getDescription());
+        doc.put("createdAt", dto.getCreatedAt() != null ? dto.getCreatedAt().toString() : null);
+        doc.put("statusLibelle", dto.getStatusLibelle());
+        doc.put("valeur", dto.getValeur());
+        doc.put("photoUrls", photoUrls);
+        return doc;
+    }
+
+    /**
+     * One query for the images of all the given signalements, grouped by signalement id.
+     */
+    private Map<Integer, List<String>> loadPhotoUrls(Collection<Integer> signalementIds) {
+        Map<Integer, List<String>> result = new HashMap<>();
+        if (signalementIds.isEmpty()) {
+            return result;
+        }
+        for (SignalementImage img : signalementImageRepository.findBySignalementIdIn(signalementIds)) {
+            if (img.getCheminOnline() != null && !img.getCheminOnline().isEmpty()) {
+                result.computeIfAbsent(img.getSignalement().getId(), k -> new ArrayList<>())
+                        .add(img.getCheminOnline());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * After a signalement reached Firestore: make sure the userTokens document exists
+     * and enqueue the "signalement created" notification to its author in the outbox.
+     * The outbox row is written in its own transaction (REQUIRES_NEW): the signalement is
+     * already marked synced, and a failed insert must not mark a caller's transaction
+     * rollback-only.
+     */
+    private void notifySignalementSynced(SignalementDto dto) {
+        // ✅ S'assurer que le document userTokens existe dans Firestore pour cet
+        // utilisateur
+        if (dto.getUserToken() != null && !dto.getUserToken().isEmpty() && dto.getUserId() != null) {
             try {
-                DocumentReference ref = db.collection("problemes").document(docId);
-                ApiFuture<WriteResult> w = ref.set(doc);
-                w.get();
-                markProblemeSynced(p.getId());
-                count++;
+                fcmNotificationService.ensureUserTokenDocExists(
+                        dto.getUserToken(),
+                        null,
+                        dto.getUserId());
             } catch (Exception e) {
-                System.out.println("Failed to sync probleme id=" + p.getId() + " : " + e.getMessage());
+                logger.warn("[SYNC] Erreur lors de la création du userToken doc pour userId={}: {}", dto.getUserId(),
+                        e.getMessage());
             }
         }
-        return count;
+
+        // Notification mise dans notification_outbox : le relais resout le token FCM, retente les
+        // echecs transitoires (UNAVAILABLE, QUOTA_EXCEEDED) et sauvegarde dans Firestore sans token
+        String firebaseUid = dto.getUserToken(); // C'est le Firebase UID, pas le FCM token
+        if (firebaseUid != null && !firebaseUid.isEmpty() && dto.getUserId() != null) {
+            TransactionTemplate tx = new TransactionTemplate(transactionManager);
+            tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            try {
+                tx.executeWithoutResult(status -> notificationOutboxService.enqueue(
+                        NotificationOutboxDto.forSignalementCreated(
+                                dto.getId(),
+                                String.valueOf(dto.getUserId()),
+                                firebaseUid,
+                                dto.getDescription())));
+                logger.debug("[SYNC] Notification mise dans l'outbox pour signalement id={}", dto.getId());
+            } catch (Exception notifError) {
+                logger.warn("[SYNC] Impossible d'enregistrer la notification pour signalement id={}: {}",
+                        dto.getId(), notifError.getMessage(), notifError);
+            }
+        } else {
+            logger.info("[SYNC] Pas de firebaseUid pour userId={} - notification non envoyée", dto.getUserId());
+        }
+    }
+
+    /**
+     * Pipelined push of problemes (valeur <= 10, not yet synced) to Firestore:
+     * <ol>
+     * <li>one fetch-joined query for the problemes and one bulk query for the images
+     * of their signalements, mapped to detached DTOs in a short read-only transaction on
+     * the calling thread (the Hibernate session is not shared with the workers);</li>
+     * <li>document building and asynchronous writes on the sync worker pool, with at
+     * most sync.push.max-in-flight writes pending at any time;</li>
+     * <li>bulk updates of firestore_synced for the acknowledged writes, each in its own
+     * short transaction.</li>
+     * </ol>
+     */
+    public int syncProblemes() {
+        List<ProblemeDto> dtos = readOnlyTransaction()
+                .execute(status -> toProblemeDtos(problemeRepository.findUnsyncedForPush(10)));
+        logger.info("[SYNC] {} probleme(s) à pousser vers Firestore", dtos.size());
+        if (dtos.isEmpty()) {
+            return 0;
+        }
+
+        Firestore db = FirestoreClient.getFirestore();
+        Semaphore inFlight = new Semaphore(Math.max(1, pushMaxInFlight));
+        CountDownLatch done = new CountDownLatch(dtos.size());
+        Queue<Integer> synced = new ConcurrentLinkedQueue<>();
+        AtomicInteger failed = new AtomicInteger();
+        long t0 = System.currentTimeMillis();
+
+        long deadline = t0 + pushTimeoutMs;
+        int submitted = 0;
+        try {
+            for (ProblemeDto dto : dtos) {
+                if (!inFlight.tryAcquire(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+                submitted++;
+                syncWorkerExecutor.execute(() -> {
+                    ApiFuture<WriteResult> write;
+                    try {
+                        write = db.collection("problemes").document(String.valueOf(dto.getId()))
+                                .set(toProblemeDoc(dto));
+                    } catch (Exception e) {
+                        logger.error("[SYNC] Échec écriture probleme id={}: {}", dto.getId(), e.getMessage());
+                        failed.incrementAndGet();
+                        inFlight.release();
+                        done.countDown();
+                        return;
+                    }
+                    ApiFutures.addCallback(write, new ApiFutureCallback<WriteResult>() {
+                        @Override
+                        public void onSuccess(WriteResult result) {
+                            synced.add(dto.getId());
+                            inFlight.release();
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            logger.error("[SYNC] Échec écriture probleme id={}: {}", dto.getId(), t.getMessage());
+                            failed.incrementAndGet();
+                            inFlight.release();
+                            done.countDown();
+                        }
+                    }, MoreExecutors.directExecutor());
+                });
+            }
+            // les documents jamais soumis comptent dans done : on n'attend que les ecritures en vol
+            for (int i = submitted; i < dtos.size(); i++) {
+                done.countDown();
+            }
+            done.await(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("[SYNC] Poussée des problemes interrompue après {} soumission(s)", submitted);
+        }
+
+        // ecritures sans reponse a l'echeance (ou jamais soumises) : en echec, repoussees au prochain cycle
+        List<Integer> syncedIds = new ArrayList<>(synced);
+        int outstanding = dtos.size() - syncedIds.size() - failed.get();
+        if (outstanding > 0) {
+            failed.addAndGet(outstanding);
+            logger.warn("[SYNC] {} écriture(s) de problemes sans réponse après {} ms, comptées en échec", outstanding,
+                    pushTimeoutMs);
+        }
+
+        for (int start = 0; start < syncedIds.size(); start += MARK_SYNCED_CHUNK) {
+            problemeRepository.markFirestoreSynced(
+                    syncedIds.subList(start, Math.min(start + MARK_SYNCED_CHUNK, syncedIds.size())));
+        }
+        logger.info("[SYNC] Problemes poussés: {} ok, {} en échec sur {} en {} ms", syncedIds.size(), failed.get(),
+                dtos.size(), System.currentTimeMillis() - t0);
+        return syncedIds.size();
+    }
+
+    private Map<String, Object> toProblemeDoc(ProblemeDto dto) {
+        Map<String, Object> doc = new HashMap<>();
+        doc.put("id", dto.getId());
+        doc.put("surface", dto.getSurface());
+        doc.put("budgetEstime", dto.getBudgetEstime());
+        doc.put("niveau", dto.getNiveau());
+        doc.put("entrepriseId", dto.getEntrepriseId());
+        doc.put("entrepriseName", dto.getEntrepriseName());
+        doc.put("statusId", dto.getStatusId());
+        doc.put("statusNom", dto.getStatusNom());
+        doc.put("statusValeur", dto.getStatusValeur());
+        doc.put("signalementId", dto.getSignalementId());
+        doc.put("userId", dto.getUserId());
+        doc.put("userEmail", dto.getUserEmail());
+        doc.put("x", dto.getX());
+        doc.put("y", dto.getY());
+        doc.put("localisation", dto.getLocalisation());
+        doc.put("description", dto.getDescription());
+        doc.put("createdAt", dto.getCreatedAt() != null ? dto.getCreatedAt().toString() : null);
+        doc.put("statusLibelle", dto.getStatusLibelle());
+
+        List<String> photoUrls = new ArrayList<>();
+        if (dto.getImages() != null) {
+            for (SignalementImageDTO img : dto.getImages()) {
+                if (img.getCheminOnline() != null && !img.getCheminOnline().isEmpty()) {
+                    photoUrls.add(img.getCheminOnline());
+                }
+            }
+        }
+        doc.put("photoUrls", photoUrls);
+        return doc;
     }
 
     public int deleteSignalementsValeur30() {
+        if (cleanupBulk) {
+            return cleanupValeur30("signalementListe").getDeleted();
+        }
         int deleted = 0;
         Firestore db = FirestoreClient.getFirestore();
         try {
@@ -329,6 +681,9 @@ public class SyncService {
     }
 
     public int deleteProblemesValeur30() {
+        if (cleanupBulk) {
+            return cleanupValeur30("problemes").getDeleted();
+        }
         int deleted = 0;
         Firestore db = FirestoreClient.getFirestore();
         try {
@@ -349,6 +704,23 @@ public class SyncService {
         return deleted;
     }
 
+    /**
+     * Bulk cleanup of the documents with valeur == 30 in one paged pass through a BulkWriter.
+     * A failed query is reported as an empty report rather than thrown, like the legacy loops.
+     */
+    public DeleteReport cleanupValeur30(String collection) {
+        try {
+            DeleteReport report = firestoreService.bulkDeleteWhere(collection, "valeur", 30, cleanupPageSize,
+                    cleanupMaxOpsPerSecond);
+            logger.info("[CLEANUP] {}: {} supprimé(s), {} échec(s) sur {} document(s) en {} ms", collection,
+                    report.getDeleted(), report.getFailed(), report.getMatched(), report.getDurationMs());
+            return report;
+        } catch (Exception e) {
+            logger.error("[CLEANUP] Échec du nettoyage de {}: {}", collection, e.getMessage(), e);
+            return new DeleteReport(collection);
+        }
+    }
+
     @Transactional
     public SyncResult fullSync() {
         try {
@@ -385,58 +757,60 @@ public class SyncService {
 
     /**
      * Sync FCM tokens from Firestore userTokens collection into local User entities.
-     * For each user with a firebase_token, reads userTokens/{firebase_token}.fcmToken
-     * and stores it in the user's fcmToken field.
+     * The userTokens/{firebase_token} documents are read with getAll in chunks of
+     * sync.fcm-tokens.chunk-size (fcmToken and updatedAt only). Users whose token and
+     * updatedAt match what was stored on the last run are skipped; the others are
+     * written with one JDBC batch update. Returns the number of users updated.
      */
     public int syncFcmTokensFromFirestore() {
         logger.info("[SYNC] Démarrage de la synchronisation des FCM tokens depuis Firestore...");
-        List<User> allUsers = userRepository.findAll();
-        int count = 0;
-        Firestore db = FirestoreClient.getFirestore();
+        List<User> users = userRepository.findWithFirebaseToken();
+        Map<String, List<User>> usersByUid = new LinkedHashMap<>();
+        for (User user : users) {
+            usersByUid.computeIfAbsent(user.getFirebaseToken(), k -> new ArrayList<>()).add(user);
+        }
+        List<String> uids = new ArrayList<>(usersByUid.keySet());
+        int chunkSize = Math.max(1, fcmTokensChunkSize);
+        List<Object[]> updates = new ArrayList<>();
+        int skipped = 0;
 
-        for (User user : allUsers) {
-            String firebaseUid = user.getFirebaseToken();
-            if (firebaseUid == null || firebaseUid.isEmpty()) {
-                continue;
-            }
+        for (int start = 0; start < uids.size(); start += chunkSize) {
+            List<String> chunk = uids.subList(start, Math.min(start + chunkSize, uids.size()));
             try {
-                DocumentSnapshot tokenDoc = db.collection("userTokens")
-                        .document(firebaseUid)
-                        .get()
-                        .get();
-
-                if (tokenDoc.exists() && tokenDoc.contains("fcmToken")) {
+                for (DocumentSnapshot tokenDoc : firestoreService.fetchDocuments("userTokens", chunk, "fcmToken",
+                        "updatedAt")) {
                     String fcmToken = tokenDoc.getString("fcmToken");
-                    if (fcmToken != null && !fcmToken.isEmpty()) {
-                        user.setFcmToken(fcmToken);
-                        userRepository.save(user);
-                        count++;
-                        logger.info("[SYNC] FCM token mis à jour pour user id={} (firebaseUid={})", user.getId(), firebaseUid);
+                    if (fcmToken == null || fcmToken.isEmpty()) {
+                        continue;
+                    }
+                    fcmTokenCache.put(tokenDoc.getId(), fcmToken);
+                    com.google.cloud.Timestamp ts = tokenDoc.getTimestamp("updatedAt");
+                    Instant updatedAt = ts != null ? Instant.ofEpochSecond(ts.getSeconds(), ts.getNanos())
+                            : null;
+                    for (User user : usersByUid.getOrDefault(tokenDoc.getId(), List.of())) {
+                        boolean unchanged = fcmToken.equals(user.getFcmToken())
+                                && (updatedAt == null || updatedAt.equals(user.getFcmTokenUpdatedAt()));
+                        if (unchanged) {
+                            skipped++;
+                            continue;
+                        }
+                        updates.add(new Object[] { fcmToken,
+                                updatedAt != null ? java.sql.Timestamp.from(updatedAt) : null, user.getId() });
                     }
                 }
             } catch (Exception e) {
-                logger.error("[SYNC] Erreur récupération FCM token pour user id={} (firebaseUid={}): {}",
-                        user.getId(), firebaseUid, e.getMessage());
+                logger.error("[SYNC] Erreur récupération des FCM tokens ({} uid(s) à partir de {}): {}", chunk.size(),
+                        chunk.get(0), e.getMessage());
             }
         }
-        logger.info("[SYNC] {} FCM token(s) synchronisé(s)", count);
-        return count;
-    }
-
-    @Transactional
-    protected void markSignalementSynced(Integer id) {
-        Signalement s = signalementRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Signalement not found " + id));
-        s.setFirestoreSynced(true);
-        signalementRepository.save(s);
-    }
 
-    @Transactional
-    protected void markProblemeSynced(Integer id) {
-        Probleme p = problemeRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Probleme not found " + id));
-        p.setFirestoreSynced(true);
-        problemeRepository.save(p);
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate("UPDATE users SET fcm_token = ?, fcm_token_updated_at = ? WHERE id = ?",
+                    updates);
+        }
+        logger.info("[SYNC] {} FCM token(s) mis à jour, {} inchangé(s), {} utilisateur(s) lus en {} lot(s)",
+                updates.size(), skipped, users.size(), (uids.size() + chunkSize - 1) / chunkSize);
+        return updates.size();
     }
 
     public static class SyncResult {
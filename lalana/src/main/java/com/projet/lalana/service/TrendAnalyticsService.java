@@ -0,0 +1,102 @@
+package com.projet.lalana.service;
+
+import com.projet.lalana.dto.TrendSeriesDto;
+import com.projet.lalana.dto.TrendSeriesDto.TrendPointDto;
+import com.projet.lalana.model.HistoryRollup;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Series temporelles lues dans history_rollup : une requete groupee pour la plage demandee et une
+ * pour le backlog initial, quelle que soit la taille de l'historique.
+ */
+@Service
+@RequiredArgsConstructor
+public class TrendAnalyticsService {
+
+    private static final int CREATE_STATUS_VALUE = 10;
+    private static final int RESOLVED_STATUS_VALUE = 30;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${analytics.trends.max-points:1100}")
+    private int maxPoints;
+
+    public TrendSeriesDto trends(String source, String granularity, LocalDate from, LocalDate to,
+            Integer entrepriseId, Integer niveau) {
+        String src = source != null ? source.toUpperCase() : HistoryRollup.SOURCE_PROBLEME;
+        if (!HistoryRollup.SOURCE_PROBLEME.equals(src) && !HistoryRollup.SOURCE_SIGNALEMENT.equals(src)) {
+            throw new ServiceException("Source inconnue: " + source + " (SIGNALEMENT ou PROBLEME)");
+        }
+        String gran = granularity != null ? granularity.toUpperCase() : HistoryRollup.DAY;
+        if (!HistoryRollup.DAY.equals(gran) && !HistoryRollup.WEEK.equals(gran)) {
+            throw new ServiceException("Granularité inconnue: " + granularity + " (DAY ou WEEK)");
+        }
+        boolean weekly = HistoryRollup.WEEK.equals(gran);
+        LocalDate end = align(to != null ? to : LocalDate.now(), weekly);
+        LocalDate start = align(from != null ? from : end.minus(weekly ? 52 : 90, weekly ? ChronoUnit.WEEKS
+                : ChronoUnit.DAYS), weekly);
+        if (start.isAfter(end)) {
+            throw new ServiceException("Plage invalide: from doit précéder to");
+        }
+        long points = (weekly ? ChronoUnit.WEEKS : ChronoUnit.DAYS).between(start, end) + 1;
+        if (points > maxPoints) {
+            throw new ServiceException("Plage trop large: " + points + " points (max " + maxPoints + ")");
+        }
+
+        StringBuilder filter = new StringBuilder(" WHERE source = ? AND granularity = ?");
+        List<Object> filterArgs = new ArrayList<>(List.of(src, gran));
+        if (entrepriseId != null) {
+            filter.append(" AND entreprise_id = ?");
+            filterArgs.add(entrepriseId);
+        }
+        if (niveau != null) {
+            filter.append(" AND niveau = ?");
+            filterArgs.add(niveau);
+        }
+
+        List<Object> baseArgs = new ArrayList<>(filterArgs);
+        baseArgs.add(Date.valueOf(start));
+        Long backlog = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(CASE status_valeur WHEN "
+                + CREATE_STATUS_VALUE + " THEN event_count WHEN " + RESOLVED_STATUS_VALUE
+                + " THEN -event_count ELSE 0 END), 0) FROM history_rollup" + filter + " AND bucket_start < ?",
+                Long.class, baseArgs.toArray());
+
+        Map<LocalDate, Map<Integer, Long>> byBucket = new TreeMap<>();
+        List<Object> rangeArgs = new ArrayList<>(filterArgs);
+        rangeArgs.add(Date.valueOf(start));
+        rangeArgs.add(Date.valueOf(end));
+        jdbcTemplate.query("SELECT bucket_start, status_valeur, SUM(event_count) AS n FROM history_rollup" + filter
+                + " AND bucket_start BETWEEN ? AND ? GROUP BY bucket_start, status_valeur", rs -> {
+                    byBucket.computeIfAbsent(rs.getDate("bucket_start").toLocalDate(), d -> new TreeMap<>())
+                            .put(rs.getInt("status_valeur"), rs.getLong("n"));
+                }, rangeArgs.toArray());
+
+        List<TrendPointDto> out = new ArrayList<>((int) points);
+        long running = backlog != null ? backlog : 0;
+        for (LocalDate bucket = start; !bucket.isAfter(end); bucket = weekly ? bucket.plusWeeks(1)
+                : bucket.plusDays(1)) {
+            Map<Integer, Long> counts = byBucket.getOrDefault(bucket, new LinkedHashMap<>());
+            long total = counts.values().stream().mapToLong(Long::longValue).sum();
+            running += counts.getOrDefault(CREATE_STATUS_VALUE, 0L) - counts.getOrDefault(RESOLVED_STATUS_VALUE, 0L);
+            out.add(new TrendPointDto(bucket, counts, total, running));
+        }
+        return new TrendSeriesDto(src, gran, start, end, entrepriseId, niveau, out);
+    }
+
+    private static LocalDate align(LocalDate date, boolean weekly) {
+        return weekly ? date.with(DayOfWeek.MONDAY) : date;
+    }
+}
@@ -0,0 +1,121 @@
+package com.projet.lalana.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.assertj.core.api.Assertions.withinPercentage;
+
+class DurationSketchTest {
+
+    @Test
+    void emptySketchHasZeroQuantilesAndEmptyHistogram() {
+        DurationSketch sketch = new DurationSketch();
+
+        assertThat(sketch.getCount()).isZero();
+        assertThat(sketch.quantile(0.5)).isZero();
+        assertThat(sketch.percentiles()).containsOnly(Map.entry("p50", 0.0), Map.entry("p90", 0.0),
+                Map.entry("p99", 0.0));
+        List<Map<String, Object>> histogram = sketch.histogram();
+        assertThat(histogram).hasSize(9);
+        assertThat(histogram).allSatisfy(bucket -> assertThat(bucket.get("count")).isEqualTo(0L));
+        assertThat(sketch.toArray()).hasSize(DurationSketch.BUCKETS).containsOnly(0L);
+    }
+
+    @Test
+    void zeroHourSampleFallsInFirstBucket() {
+        DurationSketch sketch = new DurationSketch();
+        sketch.add(0);
+
+        assertThat(DurationSketch.bucketOf(0)).isZero();
+        assertThat(DurationSketch.bucketOf(-5)).isZero();
+        assertThat(sketch.toArray()[0]).isEqualTo(1);
+        assertThat(sketch.quantile(0.5)).isCloseTo(0.0, within(0.1));
+        assertThat(sketch.histogram().get(0).get("count")).isEqualTo(1L);
+    }
+
+    @Test
+    void oneHourSampleIsWithinFivePercent() {
+        DurationSketch sketch = new DurationSketch();
+        sketch.add(1);
+
+        int bucket = DurationSketch.bucketOf(1);
+        assertThat(bucket).isPositive();
+        assertThat(DurationSketch.lowerBound(bucket)).isLessThanOrEqualTo(1.0);
+        assertThat(DurationSketch.upperBound(bucket)).isGreaterThan(1.0);
+        assertThat(sketch.quantile(0.5)).isCloseTo(1.0, withinPercentage(5));
+        assertThat(sketch.histogram().get(1).get("count")).isEqualTo(1L);
+    }
+
+    @Test
+    void hugeDurationsOverflowIntoLastBucket() {
+        DurationSketch sketch = new DurationSketch();
+        sketch.add(10_000_000L);
+        sketch.add(Long.MAX_VALUE);
+
+        int last = DurationSketch.BUCKETS - 1;
+        assertThat(DurationSketch.bucketOf(10_000_000L)).isEqualTo(last);
+        assertThat(sketch.toArray()[last]).isEqualTo(2);
+        assertThat(sketch.getCount()).isEqualTo(2);
+        assertThat(sketch.quantile(1.0))
+                .isEqualTo((DurationSketch.lowerBound(last) + DurationSketch.upperBound(last)) / 2);
+        assertThat(sketch.histogram().get(8).get("count")).isEqualTo(2L);
+    }
+
+    @Test
+    void mergeEqualsSingleSketchFedAllSamples() {
+        Random random = new Random(42);
+        DurationSketch all = new DurationSketch();
+        DurationSketch left = new DurationSketch();
+        DurationSketch right = new DurationSketch();
+        for (int i = 0; i < 10_000; i++) {
+            long hours = (long) Math.exp(random.nextDouble() * 9);
+            all.add(hours);
+            (i % 3 == 0 ? left : right).add(hours);
+        }
+
+        left.merge(right);
+
+        assertThat(left.getCount()).isEqualTo(all.getCount());
+        assertThat(left.toArray()).isEqualTo(all.toArray());
+        assertThat(left.percentiles()).isEqualTo(all.percentiles());
+        assertThat(left.histogram()).isEqualTo(all.histogram());
+    }
+
+    @Test
+    void persistedBucketsRoundTrip() {
+        DurationSketch sketch = new DurationSketch();
+        for (long hours = 0; hours < 500; hours += 7) {
+            sketch.add(hours);
+        }
+
+        DurationSketch restored = DurationSketch.of(sketch.toArray());
+
+        assertThat(restored.toArray()).isEqualTo(sketch.toArray());
+        assertThat(restored.getCount()).isEqualTo(sketch.getCount());
+        assertThat(DurationSketch.of(new long[] { 3, 4 }).getCount()).isEqualTo(7);
+    }
+
+    @Test
+    void percentilesAreWithinFivePercentOfExactValues() {
+        // durees d'au moins un jour : au-dela, l'erreur relative du milieu de bucket est bornee par ~5 %
+        Random random = new Random(7);
+        long[] samples = new long[20_000];
+        DurationSketch sketch = new DurationSketch();
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = 24 + (long) Math.exp(random.nextDouble() * Math.log(24 * 365));
+            sketch.add(samples[i]);
+        }
+        Arrays.sort(samples);
+
+        for (double q : new double[] { 0.50, 0.90, 0.99 }) {
+            long exact = samples[(int) Math.ceil(q * samples.length) - 1];
+            assertThat(sketch.quantile(q)).as("p%d", Math.round(q * 100)).isCloseTo(exact, withinPercentage(5.5));
+        }
+    }
+}
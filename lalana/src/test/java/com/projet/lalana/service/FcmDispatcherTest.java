@@ -0,0 +1,96 @@
+package com.projet.lalana.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FcmDispatcherTest {
+
+    private static final long INITIAL_MS = 1000;
+    private static final long MAX_MS = 60000;
+
+    @Test
+    void batchSizeOfOneStaysAtOneAndOnlyPauses() {
+        FcmDispatcher dispatcher = dispatcher(1);
+
+        dispatcher.adjustRate(true);
+        assertThat(currentBatchSize(dispatcher)).isEqualTo(1);
+        assertThat(throttleMs(dispatcher)).isEqualTo(INITIAL_MS);
+        assertThat(dispatcher.isThrottled()).isTrue();
+
+        dispatcher.adjustRate(true);
+        assertThat(currentBatchSize(dispatcher)).isEqualTo(1);
+        assertThat(throttleMs(dispatcher)).isEqualTo(2 * INITIAL_MS);
+
+        dispatcher.adjustRate(false);
+        assertThat(currentBatchSize(dispatcher)).isEqualTo(1);
+        assertThat(throttleMs(dispatcher)).isZero();
+    }
+
+    @Test
+    void batchSizeOfFourHalvesToOneThenRecovers() {
+        FcmDispatcher dispatcher = dispatcher(4);
+
+        dispatcher.adjustRate(true);
+        assertThat(currentBatchSize(dispatcher)).isEqualTo(2);
+        dispatcher.adjustRate(true);
+        assertThat(currentBatchSize(dispatcher)).isEqualTo(1);
+        dispatcher.adjustRate(true);
+        assertThat(currentBatchSize(dispatcher)).isEqualTo(1);
+        assertThat(throttleMs(dispatcher)).isEqualTo(4 * INITIAL_MS);
+
+        dispatcher.adjustRate(false);
+        assertThat(currentBatchSize(dispatcher)).isEqualTo(2);
+        assertThat(throttleMs(dispatcher)).isEqualTo(4 * INITIAL_MS);
+        dispatcher.adjustRate(false);
+        assertThat(currentBatchSize(dispatcher)).isEqualTo(4);
+        assertThat(throttleMs(dispatcher)).isZero();
+        dispatcher.adjustRate(false);
+        assertThat(currentBatchSize(dispatcher)).isEqualTo(4);
+    }
+
+    @Test
+    void batchSizeOfFiveHundredRecoversWithoutOvershooting() {
+        FcmDispatcher dispatcher = dispatcher(500);
+
+        for (int i = 0; i < 10; i++) {
+            dispatcher.adjustRate(true);
+        }
+        assertThat(currentBatchSize(dispatcher)).isEqualTo(1);
+        assertThat(throttleMs(dispatcher)).isEqualTo(MAX_MS);
+
+        int steps = 0;
+        while (currentBatchSize(dispatcher) < 500) {
+            int before = currentBatchSize(dispatcher);
+            dispatcher.adjustRate(false);
+            assertThat(currentBatchSize(dispatcher)).isEqualTo(Math.min(500, before * 2));
+            steps++;
+        }
+        assertThat(steps).isEqualTo(9);
+        assertThat(throttleMs(dispatcher)).isZero();
+    }
+
+    @Test
+    void batchSizeIsClampedToSendEachLimit() {
+        assertThat(currentBatchSize(dispatcher(10000))).isEqualTo(FcmDispatcher.MAX_BATCH_SIZE);
+        assertThat(currentBatchSize(dispatcher(0))).isEqualTo(1);
+    }
+
+    private static FcmDispatcher dispatcher(int batchSize) {
+        FcmDispatcher dispatcher = new FcmDispatcher(null);
+        ReflectionTestUtils.setField(dispatcher, "batchSize", batchSize);
+        ReflectionTestUtils.setField(dispatcher, "throttleInitialMs", INITIAL_MS);
+        ReflectionTestUtils.setField(dispatcher, "throttleMaxMs", MAX_MS);
+        dispatcher.init();
+        return dispatcher;
+    }
+
+    private static int currentBatchSize(FcmDispatcher dispatcher) {
+        return (int) ReflectionTestUtils.getField(dispatcher, "currentBatchSize");
+    }
+
+    private static long throttleMs(FcmDispatcher dispatcher) {
+        return (long) ReflectionTestUtils.getField(dispatcher, "throttleMs");
+    }
+}
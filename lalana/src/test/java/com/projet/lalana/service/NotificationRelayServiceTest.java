@@ -0,0 +1,123 @@
+package com.projet.lalana.service;
+
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.MessagingErrorCode;
+import com.projet.lalana.model.NotificationOutbox;
+import com.projet.lalana.model.NotificationOutboxStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class NotificationRelayServiceTest {
+
+    private static final long BASE_MS = 5000;
+    private static final long MAX_MS = 3600000;
+
+    private NotificationRelayService relay;
+
+    @BeforeEach
+    void setUp() {
+        relay = new NotificationRelayService(null, null, null, null, null);
+        ReflectionTestUtils.setField(relay, "retryBaseMs", BASE_MS);
+        ReflectionTestUtils.setField(relay, "retryMaxMs", MAX_MS);
+        ReflectionTestUtils.setField(relay, "maxAttempts", 5);
+    }
+
+    @Test
+    void retryDelayStaysInUpperHalfOfExponentialDelay() {
+        for (int attempts = 1; attempts <= 8; attempts++) {
+            long delay = Math.min(BASE_MS << (attempts - 1), MAX_MS);
+            for (int i = 0; i < 200; i++) {
+                assertThat(relay.retryDelayMs(attempts)).isBetween(delay / 2, delay);
+            }
+        }
+    }
+
+    @Test
+    void retryDelayIsCappedAtRetryMax() {
+        for (int attempts : new int[] { 11, 21, 40, Integer.MAX_VALUE }) {
+            for (int i = 0; i < 200; i++) {
+                assertThat(relay.retryDelayMs(attempts)).isBetween(MAX_MS / 2, MAX_MS);
+            }
+        }
+    }
+
+    @Test
+    void retryDelayNeverDropsBelowHalfTheBase() {
+        assertThat(relay.retryDelayMs(0)).isBetween(BASE_MS / 2, BASE_MS);
+    }
+
+    @Test
+    void successIsSent() {
+        Object[] result = relay.result(row(2), CompletableFuture.completedFuture("msg-1"), Instant.now());
+
+        assertThat(result[0]).isEqualTo(NotificationOutboxStatus.SENT.name());
+        assertThat(result[1]).isEqualTo(2);
+        assertThat(result[5]).isEqualTo(42L);
+    }
+
+    @Test
+    void unregisteredTokenIsDeadOnFirstAttempt() {
+        Object[] result = relay.result(row(0), failed(MessagingErrorCode.UNREGISTERED), Instant.now());
+
+        assertThat(result[0]).isEqualTo(NotificationOutboxStatus.DEAD.name());
+        assertThat(result[1]).isEqualTo(1);
+    }
+
+    @Test
+    void invalidArgumentIsDeadOnFirstAttempt() {
+        Object[] result = relay.result(row(0), failed(MessagingErrorCode.INVALID_ARGUMENT), Instant.now());
+
+        assertThat(result[0]).isEqualTo(NotificationOutboxStatus.DEAD.name());
+    }
+
+    @Test
+    void transientErrorIsRetriedAfterBackoff() {
+        Instant now = Instant.now();
+        Object[] result = relay.result(row(0), failed(MessagingErrorCode.UNAVAILABLE), now);
+
+        assertThat(result[0]).isEqualTo(NotificationOutboxStatus.ERROR.name());
+        assertThat(result[1]).isEqualTo(1);
+        Instant retryAt = ((Timestamp) result[4]).toInstant();
+        assertThat(retryAt).isBetween(now.plusMillis(BASE_MS / 2), now.plusMillis(BASE_MS));
+    }
+
+    @Test
+    void transientErrorIsDeadOnceMaxAttemptsReached() {
+        Object[] beforeLast = relay.result(row(3), failed(MessagingErrorCode.QUOTA_EXCEEDED), Instant.now());
+        Object[] last = relay.result(row(4), failed(MessagingErrorCode.QUOTA_EXCEEDED), Instant.now());
+
+        assertThat(beforeLast[0]).isEqualTo(NotificationOutboxStatus.ERROR.name());
+        assertThat(last[0]).isEqualTo(NotificationOutboxStatus.DEAD.name());
+        assertThat(last[1]).isEqualTo(5);
+    }
+
+    @Test
+    void nonFcmErrorIsDeadOnceMaxAttemptsReached() {
+        CompletableFuture<String> future = CompletableFuture.failedFuture(new IllegalStateException("boom"));
+
+        assertThat(relay.result(row(1), future, Instant.now())[0]).isEqualTo(NotificationOutboxStatus.ERROR.name());
+        assertThat(relay.result(row(4), future, Instant.now())[0]).isEqualTo(NotificationOutboxStatus.DEAD.name());
+    }
+
+    private static NotificationOutbox row(int attempts) {
+        NotificationOutbox row = new NotificationOutbox();
+        row.setId(42L);
+        row.setAttempts(attempts);
+        return row;
+    }
+
+    private static CompletableFuture<String> failed(MessagingErrorCode code) {
+        FirebaseMessagingException error = mock(FirebaseMessagingException.class);
+        when(error.getMessagingErrorCode()).thenReturn(code);
+        return CompletableFuture.failedFuture(error);
+    }
+}